@@ -0,0 +1,72 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package benchmarks;
+
+import java.io.File;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import sbt.internal.inc.FileAnalysisStore;
+import sbt.internal.inc.consistent.ConsistentFileAnalysisStore;
+import xsbti.compile.AnalysisContents;
+import xsbti.compile.AnalysisStore;
+
+/**
+ * Reading and writing the analysis of a module in the binary format (zinc's protobuf format, the
+ * default) and in the consistent format (analysisFormat=consistent), as done by every incremental
+ * compilation. The analysis is the one of a generated project built once by Maven with the plugin.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalysisStoreBenchmark {
+
+  @Param({"binary", "consistent"})
+  public String format;
+
+  @Param({"200", "2000"})
+  public int sources;
+
+  private GeneratedProject project;
+  private File analysis;
+  private File output;
+  private AnalysisContents contents;
+
+  @Setup
+  public void generate() throws Exception {
+    project =
+        GeneratedProject.generate(
+            "analysis-store", "<analysisFormat>" + format + "</analysisFormat>", sources, false);
+    project.mvn("compile");
+
+    analysis = project.file("target/analysis/compile");
+    output = project.file("target/analysis/benchmark");
+    contents = store(analysis).unsafeGet();
+  }
+
+  private AnalysisStore store(File file) {
+    return format.equals("consistent")
+        ? ConsistentFileAnalysisStore.binary(file)
+        : FileAnalysisStore.binary(file);
+  }
+
+  @TearDown
+  public void delete() throws Exception {
+    project.delete();
+  }
+
+  @Benchmark
+  public Optional<AnalysisContents> read() {
+    return store(analysis).get();
+  }
+
+  @Benchmark
+  public void write() {
+    store(output).set(contents);
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import sbt_inc.AnalysisFormat;
+import sbt_inc.ForkedSbtIncrementalCompilerMain;
+import sbt_inc.IncrementalOptions;
+import xsbti.compile.CompileOrder;
+
+/**
+ * Encoding of the arguments of a forked compilation (or of a compilation sent to the compile
+ * server), done by the Maven JVM for each compilation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArgsBenchmark {
+
+  @Param({"100", "2000"})
+  public int sources;
+
+  private ForkedSbtIncrementalCompilerMain.Args args;
+
+  @Setup
+  public void setup() {
+    args =
+        new ForkedSbtIncrementalCompilerMain.Args(
+            new File("/usr/lib/jvm/java-17"),
+            new File("/home/user/project/target/analysis/compile"),
+            CompileOrder.Mixed,
+            new IncrementalOptions(),
+            AnalysisFormat.binary,
+            new File("/home/user/.sbt/1.0/zinc/compiler-bridge_2.13-1.10.7.jar"),
+            "2.13.16",
+            jars("compiler", 5),
+            jars("library", 2),
+            jars("dependency", 150),
+            files("/home/user/project/src/main/scala/com/example/Source", ".scala", sources),
+            new File("/home/user/project/target/classes"),
+            Arrays.asList("-deprecation", "-feature", "-Xlint", "-release", "8"),
+            Arrays.asList("-source", "8", "-target", "8"),
+            false);
+  }
+
+  private static List<File> jars(String name, int count) {
+    return files(
+        "/home/user/.m2/repository/org/example/" + name + "/1.0/" + name + "-", ".jar", count);
+  }
+
+  private static List<File> files(String prefix, String suffix, int count) {
+    List<File> files = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      files.add(new File(prefix + i + suffix));
+    }
+    return files;
+  }
+
+  @Benchmark
+  public String[] generateArgs() {
+    return args.generateArgs();
+  }
+}
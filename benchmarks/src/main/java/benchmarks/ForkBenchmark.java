@@ -0,0 +1,72 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import scala_maven_executions.Fork;
+
+/**
+ * A forked JVM running an empty main, as done for forked compilations, scala:run... The booter jar
+ * created for each fork lists the classpath in its manifest, and the arguments.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@org.openjdk.jmh.annotations.Fork(1)
+public class ForkBenchmark {
+
+  @Param({"50", "500"})
+  public int classpathSize;
+
+  private File java;
+  private List<String> classpath;
+  private String[] args;
+
+  @Setup
+  public void setup() throws Exception {
+    java = new File(System.getProperty("java.home"), "bin/java");
+    classpath = new ArrayList<>();
+    // the benchmarks jar, with the plugin and the main class
+    classpath.add(
+        new File(ForkBenchmark.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+            .getPath());
+    String repository = System.getProperty("user.home") + "/.m2/repository";
+    for (int i = 1; i < classpathSize; i++) {
+      classpath.add(
+          repository
+              + "/org/example/library-"
+              + i
+              + "/1."
+              + i
+              + "/library-"
+              + i
+              + "-1."
+              + i
+              + ".jar");
+    }
+    args = new String[classpathSize];
+    for (int i = 0; i < args.length; i++) {
+      args[i] = "/home/user/project/src/main/scala/com/example/Source" + i + ".scala";
+    }
+  }
+
+  @Benchmark
+  public void fork() throws Exception {
+    new Fork(Main.class.getName(), classpath, new String[] {}, args, java)
+        .run(new ByteArrayOutputStream());
+  }
+
+  /** The main of the forked JVM. */
+  public static final class Main {
+    public static void main(String[] args) {}
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * A Scala project generated in a temporary directory, built by Maven with the plugin being
+ * benchmarked. Runs mvn, or the executable given by the maven.executable system property.
+ */
+final class GeneratedProject {
+
+  private final File dir;
+
+  private GeneratedProject(File dir) {
+    this.dir = dir;
+  }
+
+  /**
+   * Generates a project of {@code sources} classes, each one depending on the previous one, in
+   * packages of 20 classes.
+   *
+   * @param configuration the configuration of the plugin (XML elements)
+   * @param warnings whether each class makes scalac report a warning
+   */
+  static GeneratedProject generate(
+      String artifactId, String configuration, int sources, boolean warnings) throws IOException {
+    Properties versions = new Properties();
+    try (InputStream in = GeneratedProject.class.getResourceAsStream("/benchmarks.properties")) {
+      versions.load(in);
+    }
+    GeneratedProject project = new GeneratedProject(Files.createTempDirectory(artifactId).toFile());
+    project.write(
+        "pom.xml",
+        "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+            + "  <modelVersion>4.0.0</modelVersion>\n"
+            + "  <groupId>benchmark</groupId>\n"
+            + "  <artifactId>"
+            + artifactId
+            + "</artifactId>\n"
+            + "  <version>1.0</version>\n"
+            + "  <properties><project.build.sourceEncoding>UTF-8</project.build.sourceEncoding>"
+            + "</properties>\n"
+            + "  <dependencies><dependency>\n"
+            + "    <groupId>org.scala-lang</groupId><artifactId>scala-library</artifactId>\n"
+            + "    <version>"
+            + versions.getProperty("scala.version")
+            + "</version>\n"
+            + "  </dependency></dependencies>\n"
+            + "  <build><plugins><plugin>\n"
+            + "    <groupId>net.alchim31.maven</groupId><artifactId>scala-maven-plugin</artifactId>\n"
+            + "    <version>"
+            + versions.getProperty("plugin.version")
+            + "</version>\n"
+            + "    <executions><execution><goals><goal>compile</goal></goals></execution></executions>\n"
+            + "    <configuration>"
+            + configuration
+            + "</configuration>\n"
+            + "  </plugin></plugins></build>\n"
+            + "</project>\n");
+    for (int i = 0; i < sources; i++) {
+      String pkg = "p" + (i / 20);
+      String dependency = i == 0 ? "Int" : "p" + ((i - 1) / 20) + ".C" + (i - 1);
+      // a pure expression in statement position is reported by scalac without any option
+      String value = warnings ? "{ 1; " + i + " }" : String.valueOf(i);
+      project.write(
+          "src/main/scala/" + pkg + "/C" + i + ".scala",
+          "package "
+              + pkg
+              + "\n\nclass C"
+              + i
+              + " {\n  def previous: Option["
+              + dependency
+              + "] = None\n  def value: Int = "
+              + value
+              + "\n}\n");
+    }
+    return project;
+  }
+
+  File file(String path) {
+    return new File(dir, path);
+  }
+
+  private void write(String path, String content) throws IOException {
+    File file = file(path);
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** Runs Maven on the project, failing if the build fails. */
+  void mvn(String... goals) throws Exception {
+    String executable =
+        System.getProperty(
+            "maven.executable",
+            System.getProperty("os.name").toLowerCase(Locale.ROOT).contains("windows")
+                ? "mvn.cmd"
+                : "mvn");
+    List<String> command = new ArrayList<>(Arrays.asList(executable, "-B", "-q"));
+    command.addAll(Arrays.asList(goals));
+    File log = file("build.log");
+    Process process =
+        new ProcessBuilder(command)
+            .directory(dir)
+            .redirectErrorStream(true)
+            .redirectOutput(log)
+            .start();
+    if (process.waitFor() != 0) {
+      throw new IllegalStateException("build of " + dir + " failed, see " + log);
+    }
+  }
+
+  void delete() throws IOException {
+    FileUtils.deleteDirectory(dir);
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import scala_maven_executions.LogProcessorUtils;
+
+/**
+ * Processing of the output of scalac: the level of the lines of a non-incremental compiler
+ * (LogProcessorUtils, compared to its former regular expressions in RegexLogProcessor). Each
+ * invocation processes the whole output of a compilation. Run with {@code -prof gc} to compare the
+ * allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@org.openjdk.jmh.annotations.Fork(1)
+public class LogProcessingBenchmark {
+
+  /** Output of a scalac 2.13 compilation with warnings and errors. */
+  private static final List<String> SCALAC_OUTPUT =
+      Arrays.asList(
+          "/home/user/project/src/main/scala/com/example/service/UserService.scala:42: warning:"
+              + " method getOrElseUpdate in trait MapOps is deprecated (since 2.13.0)",
+          "    cache.getOrElseUpdate(id, load(id))",
+          "          ^",
+          "/home/user/project/src/main/scala/com/example/service/Errors.scala:12: error: type"
+              + " mismatch;",
+          " found   : Int(1)",
+          " required: String",
+          "    val message: String = 1",
+          "                          ^",
+          "/home/user/project/src/main/scala/com/example/api/Routes.scala:87: warning: match may"
+              + " not be exhaustive.",
+          "It would fail on the following input: Delete(_)",
+          "    request match {",
+          "    ^",
+          "/home/user/project/src/main/scala/com/example/model/Warnings.scala:3: error: not"
+              + " found: value Lsit",
+          "  val all = Lsit(1, 2, 3)",
+          "            ^",
+          "Compiling 123 Scala sources and 4 Java sources to /home/user/project/target/classes",
+          "warning: 1 deprecation (since 2.13.0); re-run with -deprecation for details",
+          "three warnings found",
+          "two errors found");
+
+  private static final int COMPILATION_LINES = 1000;
+
+  private String[] lines;
+
+  @Setup
+  public void setup() {
+    List<String> all = new ArrayList<>();
+    while (all.size() < COMPILATION_LINES) {
+      all.addAll(SCALAC_OUTPUT);
+    }
+    lines = all.toArray(new String[] {});
+  }
+
+  @Benchmark
+  public void levelStateOf(Blackhole blackhole) {
+    LogProcessorUtils.LevelState state = new LogProcessorUtils.LevelState();
+    for (String line : lines) {
+      state = LogProcessorUtils.levelStateOf(line, state);
+      blackhole.consume(state.level);
+    }
+  }
+
+  @Benchmark
+  public void updateLevelState(Blackhole blackhole) {
+    LogProcessorUtils.LevelState state = new LogProcessorUtils.LevelState();
+    for (String line : lines) {
+      LogProcessorUtils.updateLevelState(line, state);
+      blackhole.consume(state.level);
+    }
+  }
+
+  @Benchmark
+  public void regexLevelStateOf(Blackhole blackhole) {
+    LogProcessorUtils.LevelState state = new LogProcessorUtils.LevelState();
+    for (String line : lines) {
+      state = RegexLogProcessor.levelStateOf(line, state);
+      blackhole.consume(state.level);
+    }
+  }
+}
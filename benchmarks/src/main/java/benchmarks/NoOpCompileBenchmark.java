@@ -0,0 +1,49 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * A Maven build of a generated project where nothing changed since the last build, with the
+ * incremental compiler in process and forked (jvmArgs set). Runs mvn (or the executable given by
+ * the maven.executable system property), so includes the startup of Maven: compare the modes
+ * together rather than the absolute times.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NoOpCompileBenchmark {
+
+  @Param({"in-process", "forked"})
+  public String compiler;
+
+  @Param({"200"})
+  public int sources;
+
+  private GeneratedProject project;
+
+  @Setup
+  public void generate() throws Exception {
+    String jvmArgs = compiler.equals("forked") ? "<jvmArgs><jvmArg>-Xss4m</jvmArg></jvmArgs>" : "";
+    project = GeneratedProject.generate("noop-compile", jvmArgs, sources, false);
+    // the first build compiles everything
+    project.mvn("compile");
+  }
+
+  @TearDown
+  public void delete() throws Exception {
+    project.delete();
+  }
+
+  @Benchmark
+  public void noOpCompile() throws Exception {
+    project.mvn("compile");
+  }
+}
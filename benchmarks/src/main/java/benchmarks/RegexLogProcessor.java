@@ -0,0 +1,58 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package benchmarks;
+
+import java.util.regex.Pattern;
+import scala_maven_executions.LogProcessorUtils.Level;
+import scala_maven_executions.LogProcessorUtils.LevelState;
+
+/**
+ * The former classifier of LogProcessorUtils (lower-cased lines and regular expressions), as a
+ * baseline.
+ */
+final class RegexLogProcessor {
+
+  private static final Pattern WARNING_WORD = Pattern.compile("\\bwarnings?\\b(?!\\.scala)");
+
+  private static final Pattern ERROR_WORD = Pattern.compile("\\berrors?\\b(?!\\.scala)");
+
+  private RegexLogProcessor() {}
+
+  static LevelState levelStateOf(String line, LevelState previous) {
+    LevelState back = new LevelState();
+    String lineLowerCase = line.toLowerCase();
+    if (isWarningLine(lineLowerCase)) {
+      back.level = Level.WARNING;
+      if (lineLowerCase.contains(".scala")) {
+        back.untilContains = "^";
+      }
+    } else if (isErrorLine(lineLowerCase)) {
+      back.level = Level.ERROR;
+      if (lineLowerCase.contains(".scala")) {
+        back.untilContains = "^";
+      }
+    } else if (previous.untilContains != null) {
+      if (!lineLowerCase.contains(previous.untilContains)) {
+        back = previous;
+      } else {
+        back.level = previous.level;
+        back.untilContains = null;
+      }
+    }
+    return back;
+  }
+
+  private static boolean isWarningLine(String line) {
+    return hasSeverityMarker(line, "warning") || WARNING_WORD.matcher(line).find();
+  }
+
+  private static boolean isErrorLine(String line) {
+    return hasSeverityMarker(line, "error") || ERROR_WORD.matcher(line).find();
+  }
+
+  private static boolean hasSeverityMarker(String lineLowerCase, String marker) {
+    return lineLowerCase.startsWith(marker + ":") || lineLowerCase.contains(" " + marker + ":");
+  }
+}
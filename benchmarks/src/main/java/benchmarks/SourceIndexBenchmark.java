@@ -0,0 +1,87 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package benchmarks;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.openjdk.jmh.annotations.*;
+import util.SourceIndex;
+
+/**
+ * Finding the sources of a module (ScalaSourceMojoSupport.findSourceWithFilters), done by every
+ * compilation and every loop of scala:cc, compared to a plain directory scan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SourceIndexBenchmark {
+
+  private static final List<String> INCLUDES = Arrays.asList("**/*.java", "**/*.scala");
+  private static final List<String> EXCLUDES = Collections.emptyList();
+  private static final int FILES_PER_DIRECTORY = 20;
+
+  @Param({"100", "1000", "10000"})
+  public int files;
+
+  private List<File> roots;
+
+  @Setup
+  public void generate() throws Exception {
+    File main = Files.createTempDirectory("sources").toFile();
+    File generated = Files.createTempDirectory("generated").toFile();
+    roots = Arrays.asList(main, generated);
+    for (int i = 0; i < files; i++) {
+      // 9 out of 10 files in the main sources, a few non-sources
+      File root = i % 10 == 0 ? generated : main;
+      File dir =
+          new File(root, "p" + (i / (FILES_PER_DIRECTORY * 5)) + "/q" + (i / FILES_PER_DIRECTORY));
+      dir.mkdirs();
+      String name =
+          i % 7 == 0 ? "R" + i + ".txt" : i % 3 == 0 ? "J" + i + ".java" : "S" + i + ".scala";
+      Files.write(new File(dir, name).toPath(), new byte[0]);
+    }
+    // directories modified long ago, as in a checkout: their listing is trusted by the index
+    for (File root : roots) {
+      Files.walk(root.toPath()).forEach(path -> path.toFile().setLastModified(1_000_000_000L));
+    }
+  }
+
+  @TearDown
+  public void delete() throws Exception {
+    for (File root : roots) {
+      org.codehaus.plexus.util.FileUtils.deleteDirectory(root);
+    }
+  }
+
+  @Benchmark
+  public List<File> sourceIndex() throws Exception {
+    return SourceIndex.find(roots, INCLUDES, EXCLUDES, true);
+  }
+
+  /** The scan done before the index: a DirectoryScanner per root, and a canonical path per file. */
+  @Benchmark
+  public List<File> directoryScanner() throws Exception {
+    List<File> found = new ArrayList<>();
+    for (File root : roots) {
+      DirectoryScanner scanner = new DirectoryScanner();
+      scanner.setBasedir(root);
+      scanner.setIncludes(INCLUDES.toArray(new String[] {}));
+      scanner.setExcludes(EXCLUDES.toArray(new String[] {}));
+      scanner.addDefaultExcludes();
+      scanner.scan();
+      for (String path : scanner.getIncludedFiles()) {
+        found.add(new File(root, path).getCanonicalFile());
+      }
+    }
+    Collections.sort(found);
+    return found;
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * A full compilation of a generated project where every source makes scalac report a warning, with
+ * the incremental compiler in process and forked (jvmArgs set), where the diagnostics are sent to
+ * Maven by the forked JVM. Includes the startup of Maven: compare the modes together rather than
+ * the absolute times.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class WarningsCompileBenchmark {
+
+  @Param({"in-process", "forked"})
+  public String compiler;
+
+  @Param({"1000"})
+  public int sources;
+
+  private GeneratedProject project;
+
+  @Setup
+  public void generate() throws Exception {
+    String jvmArgs = compiler.equals("forked") ? "<jvmArgs><jvmArg>-Xss4m</jvmArg></jvmArgs>" : "";
+    project = GeneratedProject.generate("warnings-compile", jvmArgs, sources, true);
+  }
+
+  @Setup(Level.Invocation)
+  public void clean() throws Exception {
+    FileUtils.deleteDirectory(project.file("target"));
+  }
+
+  @TearDown
+  public void delete() throws Exception {
+    project.delete();
+  }
+
+  @Benchmark
+  public void compile() throws Exception {
+    project.mvn("compile");
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package sbt_inc;
+
+import java.io.File;
+import java.util.*;
+import sbt.internal.inc.Analysis;
+import sbt.internal.inc.Relations;
+import scala.jdk.javaapi.CollectionConverters;
+import xsbti.VirtualFileRef;
+import xsbti.api.AnalyzedClass;
+import xsbti.compile.AnalysisContents;
+
+/**
+ * Test classes affected by a compilation cycle of scala:cctest, found in the analyses of the main
+ * and test compilations: the classes compiled since the start of the cycle and, transitively, the
+ * classes depending on them. A class is affected even when it was not recompiled, eg when only the
+ * body of a method it calls changed.
+ */
+public final class AffectedTests {
+
+  private AffectedTests() {}
+
+  /**
+   * @param mainAnalysis the analysis file of the main classes
+   * @param testAnalysis the analysis file of the test classes, whose dependencies on the main
+   *     classes are recorded as external dependencies
+   * @param since the start of the cycle, in milliseconds since the epoch
+   * @return the names of the affected test classes (and of the other classes of the test
+   *     compilation), empty if the analysis of the tests is missing
+   */
+  public static Optional<Set<String>> of(File mainAnalysis, File testAnalysis, long since) {
+    Optional<Analysis> test = analysis(testAnalysis);
+    if (!test.isPresent()) {
+      return Optional.empty();
+    }
+    Set<String> affected = compiledSince(test.get(), since);
+    Optional<Analysis> main = analysis(mainAnalysis);
+    if (main.isPresent()) {
+      Relations mainRelations = main.get().relations();
+      Relations testRelations = test.get().relations();
+      for (String mainClass : dependents(main.get(), compiledSince(main.get(), since))) {
+        // the external dependencies are on the binary names, eg Foo$ for an object Foo
+        for (String binaryName :
+            CollectionConverters.asJava(mainRelations.productClassName().forward(mainClass))) {
+          affected.addAll(
+              CollectionConverters.asJava(testRelations.externalClassDep().reverse(binaryName)));
+        }
+      }
+    }
+    return Optional.of(dependents(test.get(), affected));
+  }
+
+  private static Optional<Analysis> analysis(File file) {
+    return AnalysisStores.read(file)
+        .map(AnalysisContents::getAnalysis)
+        .filter(analysis -> analysis instanceof Analysis)
+        .map(analysis -> (Analysis) analysis);
+  }
+
+  private static Set<String> compiledSince(Analysis analysis, long since) {
+    Set<String> classes = new HashSet<>();
+    for (Map.Entry<String, AnalyzedClass> entry :
+        CollectionConverters.asJava(analysis.apis().internal()).entrySet()) {
+      if (entry.getValue().compilationTimestamp() >= since) {
+        classes.add(entry.getKey());
+      }
+    }
+    return classes;
+  }
+
+  /**
+   * Returns the classes and, transitively, the classes of the analysis depending on them, or
+   * defined in the same sources (the dependencies within a source are not recorded).
+   */
+  private static Set<String> dependents(Analysis analysis, Set<String> classes) {
+    Relations relations = analysis.relations();
+    Set<String> dependents = new HashSet<>(classes);
+    Deque<String> toVisit = new ArrayDeque<>(classes);
+    while (!toVisit.isEmpty()) {
+      String className = toVisit.pop();
+      List<String> related =
+          new ArrayList<>(
+              CollectionConverters.asJava(relations.internalClassDep().reverse(className)));
+      for (VirtualFileRef source : CollectionConverters.asJava(relations.definesClass(className))) {
+        related.addAll(CollectionConverters.asJava(relations.classes().forward(source)));
+      }
+      for (String dependent : related) {
+        if (dependents.add(dependent)) {
+          toVisit.push(dependent);
+        }
+      }
+    }
+    return dependents;
+  }
+}
@@ -0,0 +1,17 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package sbt_inc;
+
+/** Format of the analysis file written by the incremental compiler. */
+public enum AnalysisFormat {
+  /** zinc's protobuf format, in a zip file */
+  binary,
+
+  /**
+   * zinc's "consistent" format: streamed and compressed in parallel, smaller and usually faster to
+   * read and write than {@link #binary} for large modules
+   */
+  consistent
+}
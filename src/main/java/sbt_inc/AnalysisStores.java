@@ -0,0 +1,201 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package sbt_inc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+import sbt.internal.inc.FileAnalysisStore;
+import sbt.internal.inc.consistent.ConsistentFileAnalysisStore;
+import xsbti.Logger;
+import xsbti.compile.AnalysisContents;
+import xsbti.compile.AnalysisStore;
+
+/**
+ * Analysis files of the incremental compiler. The format of a file is detected when it is read, so
+ * changing {@link AnalysisFormat} doesn't trigger a full recompilation. Writes can be asynchronous:
+ * the compilation returns while the analysis is serialized in background, and any later read of the
+ * file (by the next compilation of the module, or by a downstream module) waits for the write. A
+ * failed write deletes the file, and is kept to be reported by {@link #awaitWrite(File)}.
+ */
+final class AnalysisStores {
+
+  private static final ExecutorService WRITER =
+      Executors.newSingleThreadExecutor(
+          r -> {
+            Thread t = new Thread(r, "scala-maven-plugin-analysis-writer");
+            t.setDaemon(true);
+            return t;
+          });
+
+  private static final Map<File, Future<?>> PENDING_WRITES = new ConcurrentHashMap<>();
+  private static final Map<File, RuntimeException> FAILED_WRITES = new ConcurrentHashMap<>();
+
+  static {
+    // outside of Maven (where the writes are awaited at the end of the session), don't lose the
+    // analysis being written when exiting
+    Runtime.getRuntime()
+        .addShutdownHook(new Thread(AnalysisStores::awaitPendingWrites, "analysis-writes-flush"));
+  }
+
+  private AnalysisStores() {}
+
+  /**
+   * Returns the store of the analysis of a module, kept in memory once read or written, logging the
+   * time to load and save it.
+   */
+  static AnalysisStore of(File file, AnalysisFormat format, boolean asyncWrite, Logger logger) {
+    return AnalysisStore.getCachedStore(new TimedStore(file, format, asyncWrite, logger));
+  }
+
+  /** Reads an analysis file, whatever its format, waiting for a pending write first. */
+  static Optional<AnalysisContents> read(File file) {
+    awaitPendingWrite(file);
+    if (!file.isFile()) {
+      return Optional.empty();
+    }
+    return fileStore(file, formatOf(file)).get();
+  }
+
+  /** Waits for the pending write of {@code file}, if any. */
+  static void awaitPendingWrite(File file) {
+    Future<?> write = PENDING_WRITES.get(file);
+    if (write != null) {
+      await(write);
+      PENDING_WRITES.remove(file, write);
+    }
+  }
+
+  /**
+   * Waits for the pending write of {@code file}, if any, for the compilation that produced it.
+   *
+   * @throws IOException if the last write of the file failed
+   */
+  static void awaitWrite(File file) throws IOException {
+    awaitPendingWrite(file);
+    RuntimeException failure = FAILED_WRITES.remove(file);
+    if (failure != null) {
+      throw new IOException("failed to save the analysis to " + file, failure);
+    }
+  }
+
+  /** Waits for all the pending writes, eg before forking a JVM that could read them. */
+  static void awaitPendingWrites() {
+    for (File file : PENDING_WRITES.keySet()) {
+      awaitPendingWrite(file);
+    }
+  }
+
+  private static void await(Future<?> write) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        write.get();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      } catch (ExecutionException e) {
+        // kept in FAILED_WRITES by the write itself
+        break;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  static AnalysisFormat formatOf(File file) {
+    try (InputStream in = new FileInputStream(file)) {
+      // the consistent format is gzipped, the binary one is a zip
+      return in.read() == 0x1f && in.read() == 0x8b
+          ? AnalysisFormat.consistent
+          : AnalysisFormat.binary;
+    } catch (IOException e) {
+      return AnalysisFormat.binary;
+    }
+  }
+
+  private static AnalysisStore fileStore(File file, AnalysisFormat format) {
+    switch (format) {
+      case consistent:
+        return ConsistentFileAnalysisStore.binary(file);
+      case binary:
+      default:
+        return FileAnalysisStore.binary(file);
+    }
+  }
+
+  private static final class TimedStore implements AnalysisStore {
+    private final File file;
+    private final AnalysisFormat format;
+    private final boolean asyncWrite;
+    private final Logger logger;
+
+    TimedStore(File file, AnalysisFormat format, boolean asyncWrite, Logger logger) {
+      this.file = file;
+      this.format = format;
+      this.asyncWrite = asyncWrite;
+      this.logger = logger;
+    }
+
+    @Override
+    public Optional<AnalysisContents> get() {
+      long n0 = System.nanoTime();
+      Optional<AnalysisContents> contents = read(file);
+      if (contents.isPresent()) {
+        logger.info(() -> String.format("analysis loaded in %.1f s", seconds(n0)));
+      }
+      return contents;
+    }
+
+    @Override
+    public AnalysisContents unsafeGet() {
+      return get().get();
+    }
+
+    @Override
+    public void set(AnalysisContents contents) {
+      if (asyncWrite) {
+        // writes are serialized by the single writer thread
+        FAILED_WRITES.remove(file);
+        PENDING_WRITES.put(
+            file,
+            WRITER.submit(
+                () -> {
+                  try {
+                    write(contents);
+                  } catch (RuntimeException e) {
+                    FAILED_WRITES.put(file, e);
+                    throw e;
+                  }
+                }));
+      } else {
+        write(contents);
+      }
+    }
+
+    private void write(AnalysisContents contents) {
+      long n0 = System.nanoTime();
+      try {
+        fileStore(file, format).set(contents);
+        logger.info(() -> String.format("analysis saved in %.1f s", seconds(n0)));
+      } catch (Exception e) {
+        // a stale analysis would not match the classes anymore (zinc can throw IOExceptions)
+        file.delete();
+        throw e instanceof RuntimeException
+            ? (RuntimeException) e
+            : new IllegalStateException("failed to save the analysis to " + file, e);
+      }
+    }
+
+    private static double seconds(long n0) {
+      return (System.nanoTime() - n0) / 1_000_000_000.0;
+    }
+  }
+}
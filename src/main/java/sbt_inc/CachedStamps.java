@@ -0,0 +1,69 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package sbt_inc;
+
+import java.nio.file.Path;
+import java.util.function.Supplier;
+import sbt.internal.inc.PlainVirtualFileConverter;
+import sbt.internal.inc.Stamper;
+import sbt.internal.inc.Stamps;
+import scala.Function1;
+import util.CompileMetrics;
+import util.FileStampCache;
+import xsbti.FileConverter;
+import xsbti.VirtualFile;
+import xsbti.VirtualFileRef;
+import xsbti.compile.analysis.ReadStamps;
+import xsbti.compile.analysis.Stamp;
+
+/**
+ * Zinc stamps (content hashes of the sources, libraries and products) backed by a {@link
+ * FileStampCache}, so the files that didn't change since the previous build are not hashed again.
+ */
+final class CachedStamps {
+
+  static final FileConverter CONVERTER = PlainVirtualFileConverter.converter();
+
+  private CachedStamps() {}
+
+  /**
+   * Same stamps as zinc's default ones, with the hashes read from {@code cache} when valid. The
+   * time spent stamping the classpath is added to {@code metrics}.
+   */
+  static ReadStamps of(FileStampCache cache, CompileMetrics metrics) {
+    Function1<VirtualFileRef, Stamp> product = cached(cache, Stamper.forHashInRootPaths(CONVERTER));
+    Function1<VirtualFileRef, Stamp> cachedLibrary =
+        cached(cache, Stamper.forHashInRootPaths(CONVERTER));
+    Function1<VirtualFileRef, Stamp> library =
+        ref -> {
+          long n0 = System.nanoTime();
+          try {
+            return cachedLibrary.apply(ref);
+          } finally {
+            metrics.addTime("classpathHashing", System.nanoTime() - n0);
+          }
+        };
+    Function1<VirtualFile, Stamp> contentHash = Stamper.forContentHash();
+    Function1<VirtualFile, Stamp> source =
+        file -> stamp(cache, file, () -> contentHash.apply(file));
+    return Stamps.timeWrapBinaryStamps(Stamps.uncachedStamps(product, source, library), CONVERTER);
+  }
+
+  private static Function1<VirtualFileRef, Stamp> cached(
+      FileStampCache cache, Function1<VirtualFileRef, Stamp> stamper) {
+    return ref -> stamp(cache, ref, () -> stamper.apply(ref));
+  }
+
+  private static Stamp stamp(FileStampCache cache, VirtualFileRef ref, Supplier<Stamp> stamper) {
+    Path path;
+    try {
+      path = CONVERTER.toPath(ref);
+    } catch (RuntimeException e) {
+      // not backed by a file
+      return stamper.get();
+    }
+    return sbt.internal.inc.Stamp.fromString(cache.get(path, p -> stamper.get().writeStamp()));
+  }
+}
@@ -0,0 +1,399 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package sbt_inc;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import org.apache.maven.plugin.logging.Log;
+import sbt.internal.inc.LoggedReporter;
+import sbt.util.InterfaceUtil;
+import sbt.util.Level;
+import sbt.util.Logger;
+import scala.Enumeration;
+import scala.Function0;
+import scala.Option;
+import scala.collection.immutable.List$;
+import scala_maven_executions.ForkLogLevel;
+import util.CompileMetrics;
+import xsbti.Position;
+import xsbti.Problem;
+import xsbti.Reporter;
+import xsbti.Severity;
+
+/**
+ * Events of a compilation run in another JVM (a forked compiler or the {@link CompileServer}),
+ * streamed to the Maven process: each event is a type byte followed by its fields, the strings as
+ * their length and UTF-8 bytes. A compilation sends log messages, the diagnostics of the compiler
+ * with their position, its metrics, and ends with its result.
+ */
+final class CompileEvents {
+
+  static final byte EVENT_LOG = 1;
+  static final byte EVENT_SUCCESS = 2;
+  static final byte EVENT_FAILURE = 3;
+  static final byte EVENT_DIAGNOSTIC = 4;
+  static final byte EVENT_METRIC = 5;
+
+  static final byte METRIC_TIME = 0;
+  static final byte METRIC_PHASE_TIME = 1;
+  static final byte METRIC_COUNT = 2;
+
+  private CompileEvents() {}
+
+  static void writeString(DataOutput out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  static String readString(DataInput in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /** A diagnostic of the compiler, the position fields being null or -1 when unknown. */
+  static final class Diagnostic {
+    final ForkLogLevel severity;
+    final String sourcePath;
+    final int line;
+    final int column;
+
+    /** The line of the source pointed at, and the whitespace up to the column, or empty. */
+    final String lineContent;
+
+    final String pointerSpace;
+    final String message;
+
+    /** The diagnostic as the compiler logs it, with its position and the code pointed at. */
+    final String rendered;
+
+    Diagnostic(
+        ForkLogLevel severity,
+        String sourcePath,
+        int line,
+        int column,
+        String lineContent,
+        String pointerSpace,
+        String message,
+        String rendered) {
+      this.severity = severity;
+      this.sourcePath = sourcePath;
+      this.line = line;
+      this.column = column;
+      this.lineContent = lineContent;
+      this.pointerSpace = pointerSpace;
+      this.message = message;
+      this.rendered = rendered;
+    }
+
+    /** The problem reported by the compiler, as given to a reporter, which renders it again. */
+    Problem toProblem() {
+      Severity problemSeverity =
+          severity == ForkLogLevel.ERROR
+              ? Severity.Error
+              : severity == ForkLogLevel.WARN ? Severity.Warn : Severity.Info;
+      Position position =
+          InterfaceUtil.position(
+              line > 0 ? Option.apply(line) : Option.empty(),
+              lineContent,
+              Option.empty(),
+              column > 0 ? Option.apply(column - 1) : Option.empty(),
+              pointerSpace.isEmpty() ? Option.empty() : Option.apply(pointerSpace),
+              Option.apply(sourcePath),
+              Option.apply(sourcePath).map(File::new),
+              Option.empty(),
+              Option.empty(),
+              Option.empty(),
+              Option.empty(),
+              Option.empty(),
+              Option.empty());
+      return InterfaceUtil.problem(
+          "",
+          position,
+          message,
+          problemSeverity,
+          Option.apply(rendered),
+          Option.empty(),
+          List$.MODULE$.empty(),
+          List$.MODULE$.empty());
+    }
+  }
+
+  /** Receives the events of a compilation. */
+  interface Listener {
+    void onLog(ForkLogLevel level, String message);
+
+    void onDiagnostic(Diagnostic diagnostic);
+
+    void onMetric(byte kind, String name, long value);
+  }
+
+  /**
+   * Logs the events to Maven, gives the diagnostics to the reporter of the compilation, and adds
+   * the metrics of the compilation to the given ones.
+   */
+  static Listener toMaven(Log mavenLogger, Reporter reporter, CompileMetrics metrics) {
+    return new Listener() {
+      @Override
+      public void onLog(ForkLogLevel level, String message) {
+        switch (level) {
+          case ERROR:
+            mavenLogger.error(message);
+            break;
+          case WARN:
+            mavenLogger.warn(message);
+            break;
+          case INFO:
+            mavenLogger.info(message);
+            break;
+          default:
+            mavenLogger.debug(message);
+        }
+      }
+
+      @Override
+      public void onDiagnostic(Diagnostic diagnostic) {
+        reporter.log(diagnostic.toProblem());
+      }
+
+      @Override
+      public void onMetric(byte kind, String name, long value) {
+        if (kind == METRIC_TIME) {
+          metrics.addTime(name, value);
+        } else if (kind == METRIC_PHASE_TIME) {
+          metrics.addPhaseTime(name, value);
+        } else if (kind == METRIC_COUNT) {
+          metrics.count(name, value);
+        }
+      }
+    };
+  }
+
+  /**
+   * Writes the events of a compilation: the logs as the sbt logger of the compilation, and the
+   * diagnostics through {@link #reporter(int)}.
+   */
+  static final class Writer extends Logger {
+    private final DataOutputStream out;
+    private final boolean debugEnabled;
+
+    /** The diagnostic being logged by the reporter, in the thread of the compiler. */
+    private Problem reported;
+
+    Writer(OutputStream out, boolean debugEnabled) {
+      this.out = new DataOutputStream(new BufferedOutputStream(out));
+      this.debugEnabled = debugEnabled;
+    }
+
+    @Override
+    public void log(Enumeration.Value level, Function0<String> message) {
+      ForkLogLevel forkLogLevel = null;
+      if (level.equals(Level.Error())) {
+        forkLogLevel = ForkLogLevel.ERROR;
+      } else if (level.equals(Level.Warn())) {
+        forkLogLevel = ForkLogLevel.WARN;
+      } else if (level.equals(Level.Info())) {
+        forkLogLevel = ForkLogLevel.INFO;
+      } else if (level.equals(Level.Debug()) && debugEnabled) {
+        forkLogLevel = ForkLogLevel.DEBUG;
+      }
+
+      if (forkLogLevel != null) {
+        try {
+          synchronized (out) {
+            if (reported != null) {
+              writeDiagnostic(forkLogLevel, reported, message.apply());
+            } else {
+              out.writeByte(EVENT_LOG);
+              out.writeByte(forkLogLevel.ordinal());
+              writeString(out, message.apply());
+              // streamed as the compilation progresses; diagnostics wait for the next log
+              out.flush();
+            }
+          }
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    }
+
+    private void writeDiagnostic(ForkLogLevel level, Problem problem, String rendered)
+        throws IOException {
+      Position position = problem.position();
+      out.writeByte(EVENT_DIAGNOSTIC);
+      out.writeByte(level.ordinal());
+      writeString(out, position.sourcePath().orElse(""));
+      out.writeInt(position.line().orElse(-1));
+      out.writeInt(position.pointer().map(pointer -> pointer + 1).orElse(-1));
+      writeString(out, position.lineContent());
+      writeString(out, position.pointerSpace().orElse(""));
+      writeString(out, problem.message());
+      writeString(out, rendered);
+    }
+
+    @Override
+    public void success(Function0<String> message) {
+      log(Level.Info(), message);
+    }
+
+    @Override
+    public void trace(Function0<Throwable> t) {}
+
+    /**
+     * Returns a reporter logging the diagnostics as {@link LoggedReporter} does, each one sent as a
+     * diagnostic event.
+     */
+    Reporter reporter(int maximumErrors) {
+      return new LoggedReporter(maximumErrors, this, pos -> pos) {
+        @Override
+        public void logError(Problem problem) {
+          logProblem(problem, () -> super.logError(problem));
+        }
+
+        @Override
+        public void logWarning(Problem problem) {
+          logProblem(problem, () -> super.logWarning(problem));
+        }
+
+        @Override
+        public void logInfo(Problem problem) {
+          logProblem(problem, () -> super.logInfo(problem));
+        }
+      };
+    }
+
+    private void logProblem(Problem problem, Runnable log) {
+      synchronized (out) {
+        reported = problem;
+        try {
+          log.run();
+        } finally {
+          reported = null;
+        }
+      }
+    }
+
+    void metrics(CompileMetrics metrics) throws IOException {
+      synchronized (out) {
+        writeMetrics(METRIC_TIME, metrics.timings());
+        writeMetrics(METRIC_PHASE_TIME, metrics.phaseTimes());
+        writeMetrics(METRIC_COUNT, metrics.counts());
+      }
+    }
+
+    private void writeMetrics(byte kind, Map<String, Long> values) throws IOException {
+      for (Map.Entry<String, Long> entry : values.entrySet()) {
+        out.writeByte(EVENT_METRIC);
+        out.writeByte(kind);
+        writeString(out, entry.getKey());
+        out.writeLong(entry.getValue());
+      }
+    }
+
+    void success() throws IOException {
+      synchronized (out) {
+        out.writeByte(EVENT_SUCCESS);
+        out.flush();
+      }
+    }
+
+    /** Ends with the failure, its stack trace being omitted when it only reports errors. */
+    void failure(Throwable t) throws IOException {
+      StringWriter stacktrace = new StringWriter();
+      if (!(t instanceof xsbti.CompileFailed)) {
+        t.printStackTrace(new PrintWriter(stacktrace));
+      }
+      synchronized (out) {
+        out.writeByte(EVENT_FAILURE);
+        writeString(out, stacktrace.toString());
+        out.flush();
+      }
+    }
+  }
+
+  /**
+   * Reads the events of a compilation, decoding the strings from a buffer reused for all the
+   * events.
+   */
+  static final class Reader {
+    private final DataInputStream in;
+    private byte[] buffer = new byte[8192];
+
+    Reader(InputStream in) {
+      this.in = new DataInputStream(new BufferedInputStream(in));
+    }
+
+    /**
+     * Reads the events up to the result of the compilation.
+     *
+     * @return true if the compilation succeeded
+     * @throws EOFException if the compilation ended without result, eg its JVM crashed
+     */
+    boolean read(Listener listener) throws IOException {
+      while (true) {
+        int event = in.readUnsignedByte();
+        if (event == EVENT_LOG) {
+          ForkLogLevel level = ForkLogLevel.values()[in.readByte()];
+          listener.onLog(level, readString());
+        } else if (event == EVENT_DIAGNOSTIC) {
+          ForkLogLevel severity = ForkLogLevel.values()[in.readByte()];
+          String sourcePath = readString();
+          int line = in.readInt();
+          int column = in.readInt();
+          String lineContent = readString();
+          String pointerSpace = readString();
+          String message = readString();
+          String rendered = readString();
+          listener.onDiagnostic(
+              new Diagnostic(
+                  severity,
+                  sourcePath.isEmpty() ? null : sourcePath,
+                  line,
+                  column,
+                  lineContent,
+                  pointerSpace,
+                  message,
+                  rendered));
+        } else if (event == EVENT_METRIC) {
+          byte kind = in.readByte();
+          String name = readString();
+          listener.onMetric(kind, name, in.readLong());
+        } else if (event == EVENT_SUCCESS) {
+          return true;
+        } else if (event == EVENT_FAILURE) {
+          String stacktrace = readString();
+          if (!stacktrace.isEmpty()) {
+            listener.onLog(ForkLogLevel.ERROR, stacktrace);
+          }
+          return false;
+        } else {
+          // not an event: the JVM failed before the compilation, eg on a missing class
+          listener.onLog(ForkLogLevel.ERROR, (char) event + readRemaining());
+          return false;
+        }
+      }
+    }
+
+    private String readString() throws IOException {
+      int length = in.readInt();
+      if (length > buffer.length) {
+        buffer = new byte[Math.max(length, buffer.length * 2)];
+      }
+      in.readFully(buffer, 0, length);
+      return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private String readRemaining() throws IOException {
+      ByteArrayOutputStream remaining = new ByteArrayOutputStream();
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+        remaining.write(buffer, 0, n);
+      }
+      return new String(remaining.toByteArray(), StandardCharsets.UTF_8).trim();
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package sbt_inc;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Bounds the Scala compilations running at the same time in the Maven JVM, whatever the number of
+ * threads of the reactor (-T): by default to the available processors, as more compilations than
+ * cores only compete for them and for the heap. When compilations are waiting for a slot, the one
+ * with the highest priority goes first, then the oldest one. The priority of a module is its {@link
+ * #criticalPath critical path} in the reactor, so the longest chain of modules waiting for it is
+ * started first.
+ */
+public final class CompileScheduler {
+
+  private static final CompileScheduler INSTANCE = new CompileScheduler(defaultParallelism());
+
+  private final PriorityQueue<Ticket> waiting = new PriorityQueue<>();
+  private int parallelism;
+  private int running;
+  private long sequence;
+
+  CompileScheduler(int parallelism) {
+    this.parallelism = Math.max(1, parallelism);
+  }
+
+  /**
+   * Returns the scheduler shared by the JVM, resized to run at most {@code parallelism}
+   * compilations at the same time: {@link #defaultParallelism()} if 0, unbounded if negative.
+   */
+  public static CompileScheduler get(int parallelism) {
+    INSTANCE.setParallelism(
+        parallelism < 0
+            ? Integer.MAX_VALUE
+            : parallelism == 0 ? defaultParallelism() : parallelism);
+    return INSTANCE;
+  }
+
+  /** Number of available processors. */
+  public static int defaultParallelism() {
+    return Math.max(1, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Returns the number of nodes of the longest path starting at the node in a DAG, eg the modules
+   * of the longest chain of downstream modules of a reactor, the module included.
+   *
+   * @param downstream the direct successors of a node
+   */
+  public static <T> int criticalPath(T node, Function<T, ? extends Collection<T>> downstream) {
+    return criticalPath(node, downstream, new HashMap<>());
+  }
+
+  private static <T> int criticalPath(
+      T node, Function<T, ? extends Collection<T>> downstream, Map<T, Integer> lengths) {
+    Integer length = lengths.get(node);
+    if (length == null) {
+      int longest = 0;
+      for (T next : downstream.apply(node)) {
+        longest = Math.max(longest, criticalPath(next, downstream, lengths));
+      }
+      length = longest + 1;
+      lengths.put(node, length);
+    }
+    return length;
+  }
+
+  synchronized void setParallelism(int parallelism) {
+    this.parallelism = Math.max(1, parallelism);
+    notifyAll();
+  }
+
+  /**
+   * Waits for a compilation slot. The returned permit must be closed once the compilation is done.
+   */
+  public Permit acquire(int priority) throws InterruptedException {
+    Ticket ticket;
+    synchronized (this) {
+      ticket = new Ticket(priority, sequence++);
+      waiting.add(ticket);
+      try {
+        while (running >= parallelism || waiting.peek() != ticket) {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        waiting.remove(ticket);
+        notifyAll();
+        throw e;
+      }
+      waiting.poll();
+      running++;
+      // the next waiting ticket may fit in a free slot too
+      notifyAll();
+    }
+    AtomicBoolean released = new AtomicBoolean();
+    return () -> {
+      if (released.compareAndSet(false, true)) {
+        release();
+      }
+    };
+  }
+
+  private synchronized void release() {
+    running--;
+    notifyAll();
+  }
+
+  synchronized int running() {
+    return running;
+  }
+
+  synchronized int waiting() {
+    return waiting.size();
+  }
+
+  /** A compilation slot, released by {@link #close()}. */
+  public interface Permit extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  private static final class Ticket implements Comparable<Ticket> {
+    private final int priority;
+    private final long sequence;
+
+    Ticket(int priority, long sequence) {
+      this.priority = priority;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public int compareTo(Ticket o) {
+      if (priority != o.priority) {
+        return Integer.compare(o.priority, priority);
+      }
+      return Long.compare(sequence, o.sequence);
+    }
+  }
+}
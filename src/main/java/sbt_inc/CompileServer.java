@@ -0,0 +1,179 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package sbt_inc;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.MessageDigest;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import sbt.internal.inc.ScalaInstance;
+import util.CompileMetrics;
+
+/**
+ * Long-lived forked JVM running incremental compilations on behalf of the Maven process, so the JVM
+ * startup, zinc loading and Scala instance creation are paid once instead of once per compile.
+ *
+ * <p>On startup the server reads a secret token (the first line of its standard input, {@link
+ * #TOKEN_LENGTH} characters) then prints {@link #PORT_HEADER} followed by the port it listens to
+ * (on the loopback interface). Each connection carries one request: the token, then the {@link
+ * ForkedSbtIncrementalCompilerMain.Args} of the compilation, and gets back the {@link
+ * CompileEvents} of the compilation. A connection without the token is closed unanswered, as the
+ * port can be reached by every user of the machine (eg a shared CI agent) and a request runs
+ * arbitrary compiler plugins. The server stops when it stays idle for the timeout given as first
+ * argument (in seconds), or when its standard input is closed (the Maven process is gone).
+ */
+public final class CompileServer {
+
+  static final String PORT_HEADER = "scala-maven-plugin compile server port: ";
+
+  /** Length of the token, 256 random bits in hexadecimal. */
+  static final int TOKEN_LENGTH = 64;
+
+  private static final AtomicInteger activeRequests = new AtomicInteger();
+  private static volatile long lastActivity = System.currentTimeMillis();
+
+  private CompileServer() {}
+
+  public static void main(String[] args) throws Exception {
+    long idleTimeoutMillis = Long.parseLong(args[0]) * 1000L;
+    byte[] token = readToken(System.in);
+    ExecutorService executor =
+        Executors.newCachedThreadPool(
+            r -> {
+              Thread t = new Thread(r, "compile-server-request");
+              t.setDaemon(true);
+              return t;
+            });
+
+    Thread stdinWatcher =
+        new Thread(
+            () -> {
+              try {
+                while (System.in.read() != -1) {
+                  // wait for EOF
+                }
+              } catch (IOException e) {
+                // life...
+              }
+              System.exit(0);
+            },
+            "compile-server-stdin-watcher");
+    stdinWatcher.setDaemon(true);
+    stdinWatcher.start();
+
+    try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+      serverSocket.setSoTimeout((int) Math.min(idleTimeoutMillis, 10_000L));
+      System.out.println(PORT_HEADER + serverSocket.getLocalPort());
+      System.out.flush();
+
+      while (activeRequests.get() > 0
+          || System.currentTimeMillis() - lastActivity < idleTimeoutMillis) {
+        Socket socket;
+        try {
+          socket = serverSocket.accept();
+        } catch (SocketTimeoutException e) {
+          continue;
+        }
+        activeRequests.incrementAndGet();
+        executor.execute(
+            () -> {
+              try {
+                serve(socket, token);
+              } finally {
+                lastActivity = System.currentTimeMillis();
+                activeRequests.decrementAndGet();
+              }
+            });
+      }
+    }
+    System.exit(0);
+  }
+
+  /** Reads the first line of the input, the token, without reading further. */
+  private static byte[] readToken(InputStream in) throws IOException {
+    byte[] token = new byte[TOKEN_LENGTH];
+    int length = 0;
+    int c;
+    while ((c = in.read()) != '\n') {
+      if (c == -1 || length == TOKEN_LENGTH) {
+        throw new IOException("missing token on the standard input");
+      }
+      token[length++] = (byte) c;
+    }
+    if (length != TOKEN_LENGTH) {
+      throw new IOException("missing token on the standard input");
+    }
+    return token;
+  }
+
+  private static void serve(Socket socket, byte[] token) {
+    try (Socket s = socket;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()))) {
+      // fixed length, so nothing is allocated for an unauthenticated client
+      byte[] requestToken = new byte[TOKEN_LENGTH];
+      in.readFully(requestToken);
+      if (!MessageDigest.isEqual(token, requestToken)) {
+        return;
+      }
+      String[] request = new String[in.readInt()];
+      for (int i = 0; i < request.length; i++) {
+        request[i] = CompileEvents.readString(in);
+      }
+      ForkedSbtIncrementalCompilerMain.Args args =
+          ForkedSbtIncrementalCompilerMain.Args.parseArgs(request);
+      CompileEvents.Writer events =
+          new CompileEvents.Writer(s.getOutputStream(), args.debugEnabled);
+      CompileMetrics metrics = new CompileMetrics();
+      Throwable failure = null;
+      try {
+        compile(args, events, metrics);
+      } catch (Throwable t) {
+        failure = t;
+      }
+      events.metrics(metrics);
+      if (failure == null) {
+        events.success();
+      } else {
+        events.failure(failure);
+      }
+    } catch (IOException e) {
+      // client is gone
+    }
+  }
+
+  private static void compile(
+      ForkedSbtIncrementalCompilerMain.Args args,
+      CompileEvents.Writer events,
+      CompileMetrics metrics) {
+    ScalaInstance scalaInstance =
+        ScalaInstances.acquireScalaInstance(
+            args.scalaVersion, args.compilerAndDependencies, args.libraryAndDependencies);
+    try (SbtIncrementalCompiler incrementalCompiler =
+        SbtIncrementalCompilers.makeInProcess(
+            args.javaHome,
+            args.cacheFile,
+            args.compileOrder,
+            args.incOptions,
+            args.analysisFormat,
+            false, // the client may read the analysis from another JVM
+            scalaInstance,
+            args.compilerBridgeJar,
+            events,
+            events.reporter(SbtIncrementalCompilers.MAXIMUM_ERRORS))) {
+      incrementalCompiler.compile(
+          args.classpathElements,
+          args.sources,
+          args.classesDirectory,
+          args.scalacOptions,
+          args.javacOptions,
+          metrics);
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package sbt_inc;
+
+import java.io.*;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.*;
+import org.apache.maven.plugin.logging.Log;
+import scala_maven_executions.Fork;
+
+/**
+ * Client side of the {@link CompileServer}: starts one server per fork configuration (java
+ * executable, jvm arguments and classpath) and reuses it for every forked compilation of the Maven
+ * session. A server that died (eg after its idle timeout) is transparently restarted.
+ */
+final class CompileServers {
+
+  private static final Map<List<String>, Server> SERVERS = new HashMap<>();
+
+  private CompileServers() {}
+
+  static void compile(
+      ForkedSbtIncrementalCompilerMain.Args args,
+      List<String> forkClasspath,
+      String[] jvmArgs,
+      File javaExec,
+      int idleTimeout,
+      CompileEvents.Listener listener,
+      Log mavenLogger)
+      throws Exception {
+    String[] request = args.generateArgs();
+    boolean restart = false;
+    while (true) {
+      Server server =
+          getOrStart(forkClasspath, jvmArgs, javaExec, idleTimeout, mavenLogger, restart);
+      try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.port);
+          DataOutputStream out =
+              new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+        BufferedInputStream in = new BufferedInputStream(socket.getInputStream());
+        try {
+          out.write(server.token);
+          out.writeInt(request.length);
+          for (String arg : request) {
+            CompileEvents.writeString(out, arg);
+          }
+          out.flush();
+          in.mark(1);
+          if (in.read() < 0) {
+            throw new EOFException("connection closed by the compile server");
+          }
+          in.reset();
+        } catch (IOException e) {
+          // the server reached its idle timeout in the meantime, and closed the connection
+          // before handling it: nothing was compiled yet
+          if (restart) {
+            throw e;
+          }
+          restart = true;
+          continue;
+        }
+
+        if (!new CompileEvents.Reader(in).read(listener)) {
+          throw new RuntimeException("Compilation failed in compile server");
+        }
+        return;
+      } catch (ConnectException e) {
+        // the server reached its idle timeout in the meantime
+        if (restart) {
+          throw e;
+        }
+        restart = true;
+      }
+    }
+  }
+
+  private static synchronized Server getOrStart(
+      List<String> forkClasspath,
+      String[] jvmArgs,
+      File javaExec,
+      int idleTimeout,
+      Log mavenLogger,
+      boolean restart)
+      throws IOException {
+    List<String> key = new ArrayList<>();
+    key.add(javaExec.getPath());
+    key.addAll(Arrays.asList(jvmArgs));
+    key.addAll(forkClasspath);
+
+    Server server = SERVERS.get(key);
+    if (server == null || !server.process.isAlive() || restart) {
+      if (server != null) {
+        server.process.destroy();
+      }
+      Fork fork =
+          new Fork(
+              CompileServer.class.getName(),
+              forkClasspath,
+              jvmArgs,
+              new String[] {String.valueOf(idleTimeout)},
+              javaExec);
+      server = new Server(fork.start(), newToken(), mavenLogger);
+      SERVERS.put(key, server);
+    }
+    return server;
+  }
+
+  /** Returns a random token of {@link CompileServer#TOKEN_LENGTH} hexadecimal characters. */
+  private static byte[] newToken() {
+    byte[] random = new byte[CompileServer.TOKEN_LENGTH / 2];
+    new SecureRandom().nextBytes(random);
+    StringBuilder hex = new StringBuilder();
+    for (byte b : random) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString().getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static final class Server {
+    final Process process;
+    final int port;
+    final byte[] token;
+
+    Server(Process process, byte[] token, Log mavenLogger) throws IOException {
+      this.process = process;
+      this.token = token;
+      // sent through the standard input, readable only by the Maven process, which keeps it open
+      OutputStream stdin = process.getOutputStream();
+      stdin.write(token);
+      stdin.write('\n');
+      stdin.flush();
+      BufferedReader stdout =
+          new BufferedReader(
+              new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+
+      int port = -1;
+      String line;
+      while (port < 0 && (line = stdout.readLine()) != null) {
+        if (line.startsWith(CompileServer.PORT_HEADER)) {
+          port = Integer.parseInt(line.substring(CompileServer.PORT_HEADER.length()).trim());
+        } else {
+          mavenLogger.warn(line);
+        }
+      }
+      if (port < 0) {
+        throw new IOException("Compile server exited before listening");
+      }
+      this.port = port;
+
+      // keep draining the server output, so it never blocks on a full pipe
+      Thread drainer =
+          new Thread(
+              () -> {
+                try {
+                  String l;
+                  while ((l = stdout.readLine()) != null) {
+                    mavenLogger.debug(l);
+                  }
+                } catch (IOException e) {
+                  // life...
+                }
+              },
+              "compile-server-output");
+      drainer.setDaemon(true);
+      drainer.start();
+    }
+  }
+}
@@ -9,10 +9,14 @@ import static scala.jdk.CollectionConverters.IterableHasAsScala;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.Manifest;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -37,6 +41,12 @@ public final class CompilerBridgeFactory {
   private static final File DEFAULT_SECONDARY_CACHE_DIR =
       Paths.get(System.getProperty("user.home"), ".sbt", "1.0", "zinc", "org.scala-sbt").toFile();
 
+  // one lock per bridge jar, so bridges for different Scala versions are compiled in parallel
+  private static final Map<File, Object> INSTALL_LOCKS = new ConcurrentHashMap<>();
+
+  private static final int CONTENT_KEY_BYTES = 8;
+  private static final Map<List<String>, String> CONTENT_KEYS = new ConcurrentHashMap<>();
+
   private CompilerBridgeFactory() {}
 
   static File getCompiledBridgeJar(
@@ -47,7 +57,7 @@ public final class CompilerBridgeFactory {
       Log mavenLogger)
       throws Exception {
     // eg
-    // org.scala-sbt-compiler-bridge_2.12-1.2.4-bin_2.12.10__52.0-1.2.4_20181015T090407.jar
+    // org.scala-sbt-compiler-bridge_2.12-1.2.4-bin_2.12.10__52.0-1.2.4_20181015T090407-9f86d081884c7d65.jar
     String bridgeArtifactId = compilerBridgeArtifactId(scalaVersion.toString());
 
     if (secondaryCacheDir == null) {
@@ -107,7 +117,8 @@ public final class CompilerBridgeFactory {
     String zincVersion = properties.getProperty("version");
     String timestamp = properties.getProperty("timestamp");
 
-    String cacheFileName =
+    // the name given by sbt, so the bridges it compiled are reused
+    String bridgeName =
         SBT_GROUP_ID
             + '-'
             + bridgeArtifactId
@@ -123,112 +134,247 @@ public final class CompilerBridgeFactory {
             + timestamp
             + ".jar";
 
-    File cachedCompiledBridgeJar = new File(secondaryCacheDir, cacheFileName);
+    File cachedCompiledBridgeJar = new File(secondaryCacheDir, bridgeName);
 
     if (mavenLogger.isInfoEnabled()) {
       mavenLogger.info("Compiler bridge file: " + cachedCompiledBridgeJar);
     }
 
-    if (!cachedCompiledBridgeJar.exists()) {
-      // Install the compiler in a synchronized block to prevent multithreaded compiles to corrupt
-      // the installer.
-      synchronized (CompilerBridgeFactory.class) {
-        boolean compiledWasInstalledWhileThisThreadWasWaiting = cachedCompiledBridgeJar.exists();
+    if (cachedCompiledBridgeJar.exists() && !keyFileOf(cachedCompiledBridgeJar).exists()) {
+      // compiled by sbt, or by a previous version of the plugin
+      return cachedCompiledBridgeJar;
+    }
+    // the versions don't identify the compiler, eg a locally built one
+    String key = contentKey(Arrays.asList(scalaInstance.allJars()));
+    if (!isInstalled(cachedCompiledBridgeJar, key)) {
+      install(
+          cachedCompiledBridgeJar,
+          key,
+          jar ->
+              compileBridge(
+                  scalaInstance, bridgeArtifactId, zincVersion, resolver, jar, mavenLogger),
+          mavenLogger);
+    }
 
-        if (compiledWasInstalledWhileThisThreadWasWaiting) {
-          return cachedCompiledBridgeJar;
+    return cachedCompiledBridgeJar;
+  }
+
+  /**
+   * Returns a key of the content of the files, memoized per path, size and last modification of the
+   * files.
+   */
+  static String contentKey(List<File> files) throws IOException {
+    List<String> stamps = new ArrayList<>(files.size());
+    for (File file : files) {
+      stamps.add(file.getAbsolutePath() + ' ' + file.length() + ' ' + file.lastModified());
+    }
+    String key = CONTENT_KEYS.get(stamps);
+    if (key == null) {
+      MessageDigest digest;
+      try {
+        digest = MessageDigest.getInstance("SHA-1");
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
+      byte[] buffer = new byte[8192];
+      for (File file : files) {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+          int n;
+          while ((n = in.read(buffer)) > 0) {
+            digest.update(buffer, 0, n);
+          }
         }
+      }
+      StringBuilder hex = new StringBuilder();
+      byte[] hash = digest.digest();
+      for (int i = 0; i < CONTENT_KEY_BYTES; i++) {
+        hex.append(Character.forDigit((hash[i] >> 4) & 0xf, 16))
+            .append(Character.forDigit(hash[i] & 0xf, 16));
+      }
+      key = hex.toString();
+      CONTENT_KEYS.put(stamps, key);
+    }
+    return key;
+  }
 
-        mavenLogger.info("Compiler bridge file is not installed yet");
-        // compile and install
-        RawCompiler rawCompiler =
-            new RawCompiler(
-                scalaInstance, ClasspathOptionsUtil.auto(), new MavenLoggerSbtAdapter(mavenLogger));
-
-        File bridgeSources =
-            resolver.getJar(SBT_GROUP_ID, bridgeArtifactId, zincVersion, "sources").getFile();
-
-        Set<Path> bridgeSourcesDependencies =
-            resolver
-                .getJarAndDependencies(SBT_GROUP_ID, bridgeArtifactId, zincVersion, "sources")
-                .stream()
-                .filter(
-                    artifact ->
-                        artifact.getScope() != null && !artifact.getScope().equals("provided"))
-                .map(Artifact::getFile)
-                .map(File::toPath)
-                .collect(Collectors.toSet());
-
-        bridgeSourcesDependencies.addAll(
-            Arrays.stream(scalaInstance.allJars())
-                .sequential()
-                .map(File::toPath)
-                .collect(Collectors.toList()));
-
-        Path sourcesDir = Files.createTempDirectory("scala-maven-plugin-compiler-bridge-sources");
-        Path classesDir = Files.createTempDirectory("scala-maven-plugin-compiler-bridge-classes");
-
-        IO.unzip(bridgeSources, sourcesDir.toFile(), AllPassFilter$.MODULE$, true);
-
-        List<Path> bridgeSourcesScalaFiles =
-            FileUtils.listDirectoryContent(
-                sourcesDir,
-                file ->
-                    Files.isRegularFile(file) && file.getFileName().toString().endsWith(".scala"));
-        List<Path> bridgeSourcesNonScalaFiles =
-            FileUtils.listDirectoryContent(
-                sourcesDir,
-                file ->
-                    Files.isRegularFile(file)
-                        && !file.getFileName().toString().endsWith(".scala")
-                        && !file.getFileName().toString().equals("MANIFEST.MF"));
+  /** Writes a file to be installed. */
+  interface Installer {
+    void writeTo(File file) throws IOException;
+  }
 
-        try {
-          rawCompiler.apply(
-              IterableHasAsScala(bridgeSourcesScalaFiles).asScala().toSeq(), // sources:Seq[File]
-              IterableHasAsScala(bridgeSourcesDependencies)
-                  .asScala()
-                  .toSeq(), // classpath:Seq[File],
-              classesDir, // outputDirectory:Path,
-              IterableHasAsScala(Collections.<String>emptyList())
-                  .asScala()
-                  .toSeq() // options:Seq[String]
-              );
-
-          Manifest manifest = new Manifest();
-          Path sourcesManifestFile = sourcesDir.resolve("META-INF").resolve("MANIFEST.MF");
-          try (InputStream is = Files.newInputStream(sourcesManifestFile)) {
-            manifest.read(is);
-          }
+  /** The file next to a jar holding the content key of what it was compiled from. */
+  private static File keyFileOf(File jar) {
+    return new File(jar.getPath() + ".key");
+  }
 
-          List<Tuple2<File, String>> scalaCompiledClasses =
-              computeZipEntries(
-                  FileUtils.listDirectoryContent(classesDir, file -> true), classesDir);
-          List<Tuple2<File, String>> resources =
-              computeZipEntries(bridgeSourcesNonScalaFiles, sourcesDir);
-          List<Tuple2<File, String>> allZipEntries = new ArrayList<>();
-          allZipEntries.addAll(scalaCompiledClasses);
-          allZipEntries.addAll(resources);
-
-          IO.jar(
-              IterableHasAsScala(
-                      allZipEntries.stream()
-                          .map(x -> scala.Tuple2.apply(x._1, x._2))
-                          .collect(Collectors.toList()))
-                  .asScala(),
-              cachedCompiledBridgeJar,
-              manifest);
-
-          mavenLogger.info("Compiler bridge installed");
+  /**
+   * Returns whether the jar is installed, compiled from the content of the key if it has one (the
+   * jars compiled by sbt don't).
+   */
+  static boolean isInstalled(File jar, String key) throws IOException {
+    if (!jar.exists()) {
+      return false;
+    }
+    try {
+      return new String(Files.readAllBytes(keyFileOf(jar).toPath()), StandardCharsets.UTF_8)
+          .equals(key);
+    } catch (NoSuchFileException e) {
+      return true;
+    }
+  }
 
+  /**
+   * Installs the jar once, even by concurrent builds: the first one to lock it (in this JVM, then
+   * across processes with a lock file next to the jar, deleted once installed) writes it, the other
+   * ones wait and reuse it. The jar is written to a temporary file then renamed, so it is either
+   * missing or complete, then its key is written next to it. A jar installed with another key is
+   * replaced.
+   */
+  static void install(File jar, String key, Installer installer, Log mavenLogger)
+      throws IOException {
+    synchronized (INSTALL_LOCKS.computeIfAbsent(jar, f -> new Object())) {
+      if (isInstalled(jar, key)) {
+        return;
+      }
+      Path lockFile = Paths.get(jar.getPath() + ".lock");
+      boolean installed = false;
+      try (FileChannel channel =
+          FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+        FileLock lock = channel.tryLock();
+        if (lock == null) {
+          mavenLogger.info("Waiting for another build installing " + jar.getName());
+          lock = channel.lock();
+        }
+        try {
+          if (isInstalled(jar, key)) {
+            return;
+          }
+          // a jar replaced but not its key is compiled again, never reused with the wrong key
+          moveInto(jar.toPath(), installer);
+          moveInto(
+              keyFileOf(jar).toPath(),
+              file -> Files.write(file.toPath(), key.getBytes(StandardCharsets.UTF_8)));
+          installed = true;
         } finally {
-          FileUtils.deleteDirectory(sourcesDir);
-          FileUtils.deleteDirectory(classesDir);
+          lock.release();
+        }
+      } finally {
+        if (installed) {
+          // a build still waiting for the lock finds the jar installed once it gets it
+          try {
+            Files.deleteIfExists(lockFile);
+          } catch (IOException e) {
+            // eg still open by another build on Windows, deleted by a later install
+          }
         }
       }
     }
+  }
 
-    return cachedCompiledBridgeJar;
+  /** Writes the file to a temporary file renamed to it, under the lock of the install. */
+  private static void moveInto(Path file, Installer installer) throws IOException {
+    // named after the file, under the lock: created with the permissions of any other file, the
+    // cache being shared, and left over only by a killed build
+    Path tmp = Paths.get(file + ".tmp");
+    Files.deleteIfExists(tmp);
+    try {
+      installer.writeTo(tmp.toFile());
+      try {
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  private static void compileBridge(
+      ScalaInstance scalaInstance,
+      String bridgeArtifactId,
+      String zincVersion,
+      MavenArtifactResolver resolver,
+      File jar,
+      Log mavenLogger)
+      throws IOException {
+    mavenLogger.info("Compiler bridge file is not installed yet");
+    File bridgeSources =
+        resolver.getJar(SBT_GROUP_ID, bridgeArtifactId, zincVersion, "sources").getFile();
+    // compile and install
+    RawCompiler rawCompiler =
+        new RawCompiler(
+            scalaInstance, ClasspathOptionsUtil.auto(), new MavenLoggerSbtAdapter(mavenLogger));
+
+    Set<Path> bridgeSourcesDependencies =
+        resolver
+            .getJarAndDependencies(SBT_GROUP_ID, bridgeArtifactId, zincVersion, "sources")
+            .stream()
+            .filter(
+                artifact -> artifact.getScope() != null && !artifact.getScope().equals("provided"))
+            .map(Artifact::getFile)
+            .map(File::toPath)
+            .collect(Collectors.toSet());
+
+    bridgeSourcesDependencies.addAll(
+        Arrays.stream(scalaInstance.allJars())
+            .sequential()
+            .map(File::toPath)
+            .collect(Collectors.toList()));
+
+    Path sourcesDir = Files.createTempDirectory("scala-maven-plugin-compiler-bridge-sources");
+    Path classesDir = Files.createTempDirectory("scala-maven-plugin-compiler-bridge-classes");
+
+    IO.unzip(bridgeSources, sourcesDir.toFile(), AllPassFilter$.MODULE$, true);
+
+    List<Path> bridgeSourcesScalaFiles =
+        FileUtils.listDirectoryContent(
+            sourcesDir,
+            file -> Files.isRegularFile(file) && file.getFileName().toString().endsWith(".scala"));
+    List<Path> bridgeSourcesNonScalaFiles =
+        FileUtils.listDirectoryContent(
+            sourcesDir,
+            file ->
+                Files.isRegularFile(file)
+                    && !file.getFileName().toString().endsWith(".scala")
+                    && !file.getFileName().toString().equals("MANIFEST.MF"));
+
+    try {
+      rawCompiler.apply(
+          IterableHasAsScala(bridgeSourcesScalaFiles).asScala().toSeq(), // sources:Seq[File]
+          IterableHasAsScala(bridgeSourcesDependencies).asScala().toSeq(), // classpath:Seq[File],
+          classesDir, // outputDirectory:Path,
+          IterableHasAsScala(Collections.<String>emptyList()).asScala().toSeq() // options
+          );
+
+      Manifest manifest = new Manifest();
+      Path sourcesManifestFile = sourcesDir.resolve("META-INF").resolve("MANIFEST.MF");
+      try (InputStream is = Files.newInputStream(sourcesManifestFile)) {
+        manifest.read(is);
+      }
+
+      List<Tuple2<File, String>> scalaCompiledClasses =
+          computeZipEntries(FileUtils.listDirectoryContent(classesDir, file -> true), classesDir);
+      List<Tuple2<File, String>> resources =
+          computeZipEntries(bridgeSourcesNonScalaFiles, sourcesDir);
+      List<Tuple2<File, String>> allZipEntries = new ArrayList<>();
+      allZipEntries.addAll(scalaCompiledClasses);
+      allZipEntries.addAll(resources);
+
+      IO.jar(
+          IterableHasAsScala(
+                  allZipEntries.stream()
+                      .map(x -> scala.Tuple2.apply(x._1, x._2))
+                      .collect(Collectors.toList()))
+              .asScala(),
+          jar,
+          manifest);
+
+      mavenLogger.info("Compiler bridge installed");
+
+    } finally {
+      FileUtils.deleteDirectory(sourcesDir);
+      FileUtils.deleteDirectory(classesDir);
+    }
   }
 
   private static List<Tuple2<File, String>> computeZipEntries(List<Path> paths, Path rootDir) {
@@ -0,0 +1,66 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package sbt_inc;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import sbt.internal.inc.Locate;
+import sbt.internal.inc.PlainVirtualFile;
+import xsbti.compile.DefinesClass;
+
+/**
+ * Index of the classes defined by the jars of the classpath, shared by every compilation of the
+ * JVM, so zinc doesn't reopen and rescan the same dependency jars for every compilation. A jar is
+ * rescanned when its size or last modification time changed. Directories are not cached, as their
+ * content changes between compilations (and looking up a class in a directory is cheap).
+ */
+final class DefinesClassCache {
+
+  private static final Map<Path, Entry> CACHE = new ConcurrentHashMap<>();
+
+  private DefinesClassCache() {}
+
+  static DefinesClass definesClass(Path classpathEntry) {
+    BasicFileAttributes attrs;
+    try {
+      attrs = Files.readAttributes(classpathEntry, BasicFileAttributes.class);
+    } catch (IOException e) {
+      // missing entry
+      return Locate.definesClass(new PlainVirtualFile(classpathEntry));
+    }
+    if (!attrs.isRegularFile()) {
+      return Locate.definesClass(new PlainVirtualFile(classpathEntry));
+    }
+
+    long length = attrs.size();
+    long lastModified = attrs.lastModifiedTime().toMillis();
+    Entry entry = CACHE.get(classpathEntry);
+    DefinesClass definesClass = entry == null ? null : entry.definesClass.get();
+    if (definesClass != null && entry.length == length && entry.lastModified == lastModified) {
+      return definesClass;
+    }
+
+    definesClass = Locate.definesClass(new PlainVirtualFile(classpathEntry));
+    CACHE.put(classpathEntry, new Entry(length, lastModified, definesClass));
+    return definesClass;
+  }
+
+  private static final class Entry {
+    final long length;
+    final long lastModified;
+    final SoftReference<DefinesClass> definesClass;
+
+    Entry(long length, long lastModified, DefinesClass definesClass) {
+      this.length = length;
+      this.lastModified = lastModified;
+      this.definesClass = new SoftReference<>(definesClass);
+    }
+  }
+}
@@ -9,11 +9,7 @@ import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import sbt.internal.inc.ScalaInstance;
-import sbt.util.Level;
-import sbt.util.Logger;
-import scala.Enumeration;
-import scala.Function0;
-import scala_maven_executions.ForkLogLevel;
+import util.CompileMetrics;
 import xsbti.compile.*;
 
 public final class ForkedSbtIncrementalCompilerMain {
@@ -22,6 +18,8 @@ public final class ForkedSbtIncrementalCompilerMain {
     public final File javaHome;
     public final File cacheFile;
     public final CompileOrder compileOrder;
+    public final IncrementalOptions incOptions;
+    public final AnalysisFormat analysisFormat;
     public final File compilerBridgeJar;
     public final String scalaVersion;
     public final Collection<File> compilerAndDependencies;
@@ -39,6 +37,8 @@ public final class ForkedSbtIncrementalCompilerMain {
         File javaHome,
         File cacheFile,
         CompileOrder compileOrder,
+        IncrementalOptions incOptions,
+        AnalysisFormat analysisFormat,
         File compilerBridgeJar,
         String scalaVersion,
         Collection<File> compilerAndDependencies,
@@ -52,6 +52,8 @@ public final class ForkedSbtIncrementalCompilerMain {
       this.javaHome = javaHome;
       this.cacheFile = cacheFile;
       this.compileOrder = compileOrder;
+      this.incOptions = incOptions;
+      this.analysisFormat = analysisFormat;
       this.compilerBridgeJar = compilerBridgeJar;
       this.scalaVersion = scalaVersion;
       this.compilerAndDependencies = compilerAndDependencies;
@@ -77,6 +79,8 @@ public final class ForkedSbtIncrementalCompilerMain {
       args.add(javaHome.toString());
       args.add(cacheFile.getPath());
       args.add(compileOrder.name());
+      writeCollection(args, incOptions.toArgs(), Function.identity());
+      args.add(analysisFormat.name());
       args.add(compilerBridgeJar.getPath());
       args.add(scalaVersion);
       writeCollection(args, compilerAndDependencies, File::getPath);
@@ -105,6 +109,9 @@ public final class ForkedSbtIncrementalCompilerMain {
       File javaHome = new File(args[index.getAndIncrement()]);
       File cacheFile = new File(args[index.getAndIncrement()]);
       CompileOrder compileOrder = CompileOrder.valueOf(args[index.getAndIncrement()]);
+      IncrementalOptions incOptions =
+          IncrementalOptions.fromArgs(readList(args, index, Function.identity()));
+      AnalysisFormat analysisFormat = AnalysisFormat.valueOf(args[index.getAndIncrement()]);
       File compilerBridgeJar = new File(args[index.getAndIncrement()]);
       String scalaVersion = args[index.getAndIncrement()];
       List<File> compilerAndDependencies = readList(args, index, File::new);
@@ -120,6 +127,8 @@ public final class ForkedSbtIncrementalCompilerMain {
           javaHome,
           cacheFile,
           compileOrder,
+          incOptions,
+          analysisFormat,
           compilerBridgeJar,
           scalaVersion,
           compilerAndDependencies,
@@ -136,55 +145,58 @@ public final class ForkedSbtIncrementalCompilerMain {
   public static void main(String[] args) {
     Args parsedArgs = Args.parseArgs(args);
 
-    Logger sbtLogger =
-        new Logger() {
-          @Override
-          public void log(Enumeration.Value level, Function0<String> message) {
-            ForkLogLevel forkLogLevel = null;
-            if (level.equals(Level.Error())) {
-              forkLogLevel = ForkLogLevel.ERROR;
-            } else if (level.equals(Level.Warn())) {
-              forkLogLevel = ForkLogLevel.WARN;
-            } else if (level.equals(Level.Info())) {
-              forkLogLevel = ForkLogLevel.INFO;
-            } else if (level.equals(Level.Debug()) && parsedArgs.debugEnabled) {
-              forkLogLevel = ForkLogLevel.DEBUG;
-            }
-
-            if (forkLogLevel != null) {
-              System.out.println(forkLogLevel.addHeader(message.apply()));
-            }
-          }
-
-          @Override
-          public void success(Function0<String> message) {
-            log(Level.Info(), message);
-          }
-
-          @Override
-          public void trace(Function0<Throwable> t) {}
-        };
+    // stdout carries the events of the compilation, anything else printed goes to stderr
+    CompileEvents.Writer events =
+        new CompileEvents.Writer(new FileOutputStream(FileDescriptor.out), parsedArgs.debugEnabled);
+    System.setOut(System.err);
+
+    CompileMetrics metrics = new CompileMetrics();
+    Throwable failure = null;
+    try {
+      compile(parsedArgs, events, metrics);
+    } catch (Throwable t) {
+      failure = t;
+    }
+
+    try {
+      events.metrics(metrics);
+      if (failure == null) {
+        events.success();
+      } else {
+        events.failure(failure);
+      }
+    } catch (IOException e) {
+      // Maven is gone
+    }
+    if (failure != null) {
+      System.exit(1);
+    }
+  }
 
+  private static void compile(Args args, CompileEvents.Writer events, CompileMetrics metrics) {
     ScalaInstance scalaInstance =
         ScalaInstances.makeScalaInstance(
-            parsedArgs.scalaVersion,
-            parsedArgs.compilerAndDependencies,
-            parsedArgs.libraryAndDependencies);
+            args.scalaVersion, args.compilerAndDependencies, args.libraryAndDependencies);
 
     SbtIncrementalCompiler incrementalCompiler =
         SbtIncrementalCompilers.makeInProcess(
-            parsedArgs.javaHome,
-            parsedArgs.cacheFile,
-            parsedArgs.compileOrder,
+            args.javaHome,
+            args.cacheFile,
+            args.compileOrder,
+            args.incOptions,
+            args.analysisFormat,
+            false, // the client reads the analysis once the process exits
             scalaInstance,
-            parsedArgs.compilerBridgeJar,
-            sbtLogger);
+            args.compilerBridgeJar,
+            events,
+            events.reporter(SbtIncrementalCompilers.MAXIMUM_ERRORS));
 
     incrementalCompiler.compile(
-        parsedArgs.classpathElements,
-        parsedArgs.sources,
-        parsedArgs.classesDirectory,
-        parsedArgs.scalacOptions,
-        parsedArgs.javacOptions);
+        args.classpathElements,
+        args.sources,
+        args.classesDirectory,
+        args.scalacOptions,
+        args.javacOptions,
+        metrics);
   }
 }
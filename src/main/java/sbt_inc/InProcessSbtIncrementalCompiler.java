@@ -5,10 +5,16 @@
 package sbt_inc;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import sbt.internal.inc.*;
+import scala.jdk.javaapi.CollectionConverters;
+import util.CompileMetrics;
+import util.FileStampCache;
 import xsbti.Logger;
 import xsbti.VirtualFile;
+import xsbti.VirtualFileRef;
+import xsbti.api.AnalyzedClass;
 import xsbti.compile.*;
 
 public final class InProcessSbtIncrementalCompiler implements SbtIncrementalCompiler {
@@ -18,6 +24,7 @@ public final class InProcessSbtIncrementalCompiler implements SbtIncrementalComp
 
   private final IncrementalCompiler compiler;
   private final CompileOrder compileOrder;
+  private final FileStampCache stampCache;
   private final Logger sbtLogger;
 
   public InProcessSbtIncrementalCompiler(
@@ -26,12 +33,14 @@ public final class InProcessSbtIncrementalCompiler implements SbtIncrementalComp
       Setup setup,
       IncrementalCompiler compiler,
       CompileOrder compileOrder,
+      FileStampCache stampCache,
       Logger sbtLogger) {
     this.compilers = compilers;
     this.analysisStore = analysisStore;
     this.setup = setup;
     this.compiler = compiler;
     this.compileOrder = compileOrder;
+    this.stampCache = stampCache;
     this.sbtLogger = sbtLogger;
   }
 
@@ -41,7 +50,8 @@ public final class InProcessSbtIncrementalCompiler implements SbtIncrementalComp
       Collection<File> sources,
       File classesDirectory,
       Collection<String> scalacOptions,
-      Collection<String> javacOptions) {
+      Collection<String> javacOptions,
+      CompileMetrics metrics) {
 
     // incremental compiler needs to add the output dir in the classpath for Java + Scala
     Collection<File> fullClasspathElements = new ArrayList<>(classpathElements);
@@ -62,19 +72,79 @@ public final class InProcessSbtIncrementalCompiler implements SbtIncrementalComp
             pos -> pos, // sourcePositionMappers
             compileOrder, // order
             Optional.empty(), // temporaryClassesDirectory
-            Optional.empty(), // _converter
-            Optional.empty(), // _stamper
+            Optional.of(CachedStamps.CONVERTER), // _converter
+            Optional.of(CachedStamps.of(stampCache, metrics)), // _stamper
             Optional.empty() // _earlyOutput
             );
 
-    Inputs inputs = Inputs.of(compilers, options, setup, previousResult());
+    PhaseTimer phases = new PhaseTimer(metrics);
+    Inputs inputs =
+        Inputs.of(
+            TimedJavac.of(compilers, metrics, phases),
+            options,
+            setup.withProgress(phases),
+            previousResult(metrics));
 
-    CompileResult newResult = compiler.compile(inputs, sbtLogger);
+    long startTime = System.currentTimeMillis();
+    CompileResult newResult;
+    try {
+      newResult = compiler.compile(inputs, sbtLogger);
+    } finally {
+      phases.stop();
+      // the hashes of the unchanged files are still valid when the compilation failed
+      try {
+        stampCache.save();
+      } catch (IOException e) {
+        sbtLogger.warn(() -> "failed to save the stamps cache: " + e);
+      }
+    }
+    long n0 = System.nanoTime();
     analysisStore.set(AnalysisContents.create(newResult.analysis(), newResult.setup()));
+    metrics.addTime("analysisStore", System.nanoTime() - n0);
+    if (newResult.hasModified()) {
+      logSummary(newResult.analysis(), startTime, metrics);
+    }
+    sbtLogger.debug(UpstreamAnalysisCache.get()::toString);
+  }
+
+  /**
+   * Logs the number of invalidation cycles and of recompiled sources, the classes compiled by a
+   * cycle sharing the same compilation timestamp. The sources of the first cycle are the ones
+   * invalidated by the changes, the next cycles recompile the sources depending on them.
+   */
+  private void logSummary(CompileAnalysis analysis, long startTime, CompileMetrics metrics) {
+    if (!(analysis instanceof Analysis)) {
+      return;
+    }
+    Analysis fullAnalysis = (Analysis) analysis;
+    SortedMap<Long, Set<VirtualFileRef>> cycles = new TreeMap<>();
+    Set<VirtualFileRef> sources = new HashSet<>();
+    for (Map.Entry<String, AnalyzedClass> entry :
+        CollectionConverters.asJava(fullAnalysis.apis().internal()).entrySet()) {
+      long timestamp = entry.getValue().compilationTimestamp();
+      if (timestamp >= startTime) {
+        Set<VirtualFileRef> definingSources =
+            CollectionConverters.asJava(fullAnalysis.relations().definesClass(entry.getKey()));
+        cycles.computeIfAbsent(timestamp, t -> new HashSet<>()).addAll(definingSources);
+        sources.addAll(definingSources);
+      }
+    }
+    if (!cycles.isEmpty()) {
+      metrics.count("invalidated", cycles.get(cycles.firstKey()).size());
+      metrics.count("recompiled", sources.size());
+      metrics.count("invalidationCycles", cycles.size());
+      sbtLogger.info(
+          () ->
+              String.format(
+                  "recompiled %d sources in %d invalidation cycles",
+                  sources.size(), cycles.size()));
+    }
   }
 
-  private PreviousResult previousResult() {
+  private PreviousResult previousResult(CompileMetrics metrics) {
+    long n0 = System.nanoTime();
     Optional<AnalysisContents> analysisContents = analysisStore.get();
+    metrics.addTime("analysisLoad", System.nanoTime() - n0);
     if (analysisContents.isPresent()) {
       AnalysisContents analysisContents0 = analysisContents.get();
       CompileAnalysis previousAnalysis = analysisContents0.getAnalysis();
@@ -84,4 +154,9 @@ public final class InProcessSbtIncrementalCompiler implements SbtIncrementalComp
       return PreviousResult.of(Optional.empty(), Optional.empty());
     }
   }
+
+  @Override
+  public void close() {
+    ScalaInstances.releaseScalaInstance(compilers.scalac().scalaInstance());
+  }
 }
@@ -0,0 +1,184 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package sbt_inc;
+
+import java.io.File;
+import java.util.*;
+import xsbti.compile.IncOptions;
+
+/**
+ * Tuning of the incremental compiler (how far a change is propagated), mapped to zinc's {@link
+ * IncOptions}. Unset fields keep zinc's default. Note: zinc always uses class-based name hashing.
+ */
+public class IncrementalOptions {
+  /**
+   * Number of invalidation steps of the transitive dependencies before recompiling them all at
+   * once.
+   */
+  public Integer transitiveStep;
+
+  /**
+   * Fraction (0.0 to 1.0) of the sources to invalidate above which all the sources are recompiled.
+   */
+  public Double recompileAllFraction;
+
+  /** Print the API changes. */
+  public Boolean apiDebug;
+
+  /** Number of lines of context printed by apiDebug. */
+  public Integer apiDiffContextSize;
+
+  /** Directory where the APIs are dumped (for debugging). */
+  public File apiDumpDirectory;
+
+  /** Print the relations between sources, classes and binaries. */
+  public Boolean relationsDebug;
+
+  /** Only invalidate the subclasses of a sealed class that are impacted by a change. */
+  public Boolean useOptimizedSealed;
+
+  /** Fail on inconsistencies of the incremental compilation instead of ignoring them. */
+  public Boolean strictMode;
+
+  /** Store the APIs in the analysis file (needed by apiDebug). */
+  public Boolean storeApis;
+
+  /** Log when the recompilation of a macro definition triggers the recompilation of its users. */
+  public Boolean logRecompileOnMacro;
+
+  /** Recompile the users of a macro when its definition changed. */
+  public Boolean recompileOnMacroDef;
+
+  /** scalac options that don't trigger a full recompilation when they change (regex). */
+  public String[] ignoredScalacOptions;
+
+  IncOptions toIncOptions() {
+    IncOptions options = IncOptions.of();
+    if (transitiveStep != null) {
+      options = options.withTransitiveStep(transitiveStep);
+    }
+    if (recompileAllFraction != null) {
+      options = options.withRecompileAllFraction(recompileAllFraction);
+    }
+    if (apiDebug != null) {
+      options = options.withApiDebug(apiDebug);
+    }
+    if (apiDiffContextSize != null) {
+      options = options.withApiDiffContextSize(apiDiffContextSize);
+    }
+    if (apiDumpDirectory != null) {
+      options = options.withApiDumpDirectory(Optional.of(apiDumpDirectory));
+    }
+    if (relationsDebug != null) {
+      options = options.withRelationsDebug(relationsDebug);
+    }
+    if (useOptimizedSealed != null) {
+      options = options.withUseOptimizedSealed(useOptimizedSealed);
+    }
+    if (strictMode != null) {
+      options = options.withStrictMode(strictMode);
+    }
+    if (storeApis != null) {
+      options = options.withStoreApis(storeApis);
+    }
+    if (logRecompileOnMacro != null) {
+      options = options.withLogRecompileOnMacro(logRecompileOnMacro);
+    }
+    if (recompileOnMacroDef != null) {
+      options = options.withRecompileOnMacroDef(Optional.of(recompileOnMacroDef));
+    }
+    if (ignoredScalacOptions != null) {
+      options = options.withIgnoredScalacOptions(ignoredScalacOptions);
+    }
+    return options;
+  }
+
+  /** Encodes the set fields as "name=value" entries, to pass them to a forked compiler. */
+  List<String> toArgs() {
+    List<String> args = new ArrayList<>();
+    add(args, "transitiveStep", transitiveStep);
+    add(args, "recompileAllFraction", recompileAllFraction);
+    add(args, "apiDebug", apiDebug);
+    add(args, "apiDiffContextSize", apiDiffContextSize);
+    add(args, "apiDumpDirectory", apiDumpDirectory);
+    add(args, "relationsDebug", relationsDebug);
+    add(args, "useOptimizedSealed", useOptimizedSealed);
+    add(args, "strictMode", strictMode);
+    add(args, "storeApis", storeApis);
+    add(args, "logRecompileOnMacro", logRecompileOnMacro);
+    add(args, "recompileOnMacroDef", recompileOnMacroDef);
+    if (ignoredScalacOptions != null) {
+      for (String option : ignoredScalacOptions) {
+        args.add("ignoredScalacOptions=" + option);
+      }
+    }
+    return args;
+  }
+
+  private static void add(List<String> args, String name, Object value) {
+    if (value != null) {
+      args.add(name + '=' + value);
+    }
+  }
+
+  static IncrementalOptions fromArgs(Collection<String> args) {
+    IncrementalOptions options = new IncrementalOptions();
+    List<String> ignoredScalacOptions = new ArrayList<>();
+    for (String arg : args) {
+      int sep = arg.indexOf('=');
+      String name = arg.substring(0, sep);
+      String value = arg.substring(sep + 1);
+      switch (name) {
+        case "transitiveStep":
+          options.transitiveStep = Integer.valueOf(value);
+          break;
+        case "recompileAllFraction":
+          options.recompileAllFraction = Double.valueOf(value);
+          break;
+        case "apiDebug":
+          options.apiDebug = Boolean.valueOf(value);
+          break;
+        case "apiDiffContextSize":
+          options.apiDiffContextSize = Integer.valueOf(value);
+          break;
+        case "apiDumpDirectory":
+          options.apiDumpDirectory = new File(value);
+          break;
+        case "relationsDebug":
+          options.relationsDebug = Boolean.valueOf(value);
+          break;
+        case "useOptimizedSealed":
+          options.useOptimizedSealed = Boolean.valueOf(value);
+          break;
+        case "strictMode":
+          options.strictMode = Boolean.valueOf(value);
+          break;
+        case "storeApis":
+          options.storeApis = Boolean.valueOf(value);
+          break;
+        case "logRecompileOnMacro":
+          options.logRecompileOnMacro = Boolean.valueOf(value);
+          break;
+        case "recompileOnMacroDef":
+          options.recompileOnMacroDef = Boolean.valueOf(value);
+          break;
+        case "ignoredScalacOptions":
+          ignoredScalacOptions.add(value);
+          break;
+        default:
+          throw new IllegalArgumentException("unknown incremental option: " + name);
+      }
+    }
+    if (!ignoredScalacOptions.isEmpty()) {
+      options.ignoredScalacOptions = ignoredScalacOptions.toArray(new String[] {});
+    }
+    return options;
+  }
+
+  @Override
+  public String toString() {
+    return "IncrementalOptions" + toArgs();
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package sbt_inc;
+
+import util.CompileMetrics;
+import xsbti.compile.CompileProgress;
+
+/**
+ * Times the scalac phases from the progress callbacks of zinc: a phase lasts from its first unit
+ * (or the advance to it) to the start of the next one. Stopped while javac runs, so the Java
+ * compilation between two invalidation cycles is not counted in the last phase of scalac.
+ */
+final class PhaseTimer implements CompileProgress {
+  // reported by zinc between the phases of scalac and javac
+  private static final String NO_PHASE = "<no phase>";
+
+  private final CompileMetrics metrics;
+  private String phase;
+  private long phaseStart;
+
+  PhaseTimer(CompileMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public synchronized void startUnit(String phase, String unitPath) {
+    enter(phase);
+  }
+
+  @Override
+  public synchronized boolean advance(int current, int total, String prevPhase, String nextPhase) {
+    enter(nextPhase);
+    return true;
+  }
+
+  /** Ends the current phase, if any. */
+  synchronized void stop() {
+    if (phase != null) {
+      metrics.addPhaseTime(phase, System.nanoTime() - phaseStart);
+      phase = null;
+    }
+  }
+
+  private void enter(String newPhase) {
+    if (newPhase == null || NO_PHASE.equals(newPhase)) {
+      stop();
+    } else if (!newPhase.equals(phase)) {
+      stop();
+      phase = newPhase;
+      phaseStart = System.nanoTime();
+    }
+  }
+}
@@ -6,13 +6,22 @@ package sbt_inc;
 
 import java.io.File;
 import java.util.Collection;
+import util.CompileMetrics;
 
-public interface SbtIncrementalCompiler {
+public interface SbtIncrementalCompiler extends AutoCloseable {
 
+  /**
+   * @param metrics the metrics of the compilation, only the total time when the compiler is forked
+   */
   void compile(
       Collection<File> classpathElements,
       Collection<File> sources,
       File classesDirectory,
       Collection<String> scalacOptions,
-      Collection<String> javacOptions);
+      Collection<String> javacOptions,
+      CompileMetrics metrics);
+
+  /** Releases the resources shared with other compilers (Scala instance, class loaders). */
+  @Override
+  default void close() {}
 }
@@ -4,16 +4,14 @@
  */
 package sbt_inc;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Collectors;
-import org.apache.commons.exec.LogOutputStream;
 import org.apache.maven.plugin.logging.Log;
 import sbt.internal.inc.*;
-import sbt.internal.inc.FileAnalysisStore;
 import sbt.internal.inc.ScalaInstance;
 import sbt.util.Logger;
 import scala.Option;
@@ -21,13 +19,21 @@ import scala.jdk.FunctionWrappers;
 import scala_maven.MavenArtifactResolver;
 import scala_maven.VersionNumber;
 import scala_maven_executions.Fork;
-import scala_maven_executions.ForkLogger;
+import util.CompileMetrics;
+import util.FileStampCache;
 import xsbti.PathBasedFile;
+import xsbti.Reporter;
 import xsbti.T2;
 import xsbti.VirtualFile;
 import xsbti.compile.*;
 
 public final class SbtIncrementalCompilers {
+
+  private static final String STAMPS_SUFFIX = "-stamps";
+
+  /** Number of errors reported by a compilation, the next ones being only counted. */
+  static final int MAXIMUM_ERRORS = 100;
+
   public static SbtIncrementalCompiler make(
       File javaHome,
       MavenArtifactResolver resolver,
@@ -35,35 +41,63 @@ public final class SbtIncrementalCompilers {
       Log mavenLogger,
       File cacheFile,
       CompileOrder compileOrder,
+      IncrementalOptions incOptions,
+      AnalysisFormat analysisFormat,
       VersionNumber scalaVersion,
       Collection<File> compilerAndDependencies,
       Collection<File> libraryAndDependencies,
       String[] jvmArgs,
       File javaExec,
-      List<File> forkBootClasspath)
+      List<File> forkBootClasspath,
+      int scalaInstanceCacheSize,
+      boolean useCompileServer,
+      int compileServerIdleTimeout,
+      CompileMetrics metrics)
       throws Exception {
 
+    if (incOptions == null) {
+      incOptions = new IncrementalOptions();
+    }
+
+    ScalaInstances.setCacheSize(scalaInstanceCacheSize);
     ScalaInstance scalaInstance =
-        ScalaInstances.makeScalaInstance(
+        ScalaInstances.acquireScalaInstance(
             scalaVersion.toString(), compilerAndDependencies, libraryAndDependencies);
 
-    File compilerBridgeJar =
-        CompilerBridgeFactory.getCompiledBridgeJar(
-            scalaVersion, scalaInstance, secondaryCacheDir, resolver, mavenLogger);
+    File compilerBridgeJar;
+    long n0 = System.nanoTime();
+    try {
+      compilerBridgeJar =
+          CompilerBridgeFactory.getCompiledBridgeJar(
+              scalaVersion, scalaInstance, secondaryCacheDir, resolver, mavenLogger);
+      metrics.addTime("bridgeLookup", System.nanoTime() - n0);
+    } catch (Exception e) {
+      ScalaInstances.releaseScalaInstance(scalaInstance);
+      throw e;
+    }
 
     if (jvmArgs == null || jvmArgs.length == 0) {
+      Logger sbtLogger = new MavenLoggerSbtAdapter(mavenLogger);
       return makeInProcess(
           javaHome,
           cacheFile,
           compileOrder,
+          incOptions,
+          analysisFormat,
+          true,
           scalaInstance,
           compilerBridgeJar,
-          new MavenLoggerSbtAdapter(mavenLogger));
+          sbtLogger,
+          new LoggedReporter(MAXIMUM_ERRORS, sbtLogger, pos -> pos));
     } else {
+      // the forked process creates its own Scala instance
+      ScalaInstances.releaseScalaInstance(scalaInstance);
       return makeForkedProcess(
           javaHome,
           cacheFile,
           compileOrder,
+          incOptions,
+          analysisFormat,
           compilerBridgeJar,
           scalaVersion,
           compilerAndDependencies,
@@ -71,7 +105,33 @@ public final class SbtIncrementalCompilers {
           mavenLogger,
           jvmArgs,
           javaExec,
-          forkBootClasspath);
+          forkBootClasspath,
+          useCompileServer ? compileServerIdleTimeout : -1);
+    }
+  }
+
+  /**
+   * Resolves or compiles the compiler bridge of a Scala version, if not yet installed, before any
+   * compilation needs it. The Scala instance stays in the cache of the JVM for the compilations.
+   *
+   * @return the bridge jar
+   */
+  public static File prepareCompilerBridge(
+      VersionNumber scalaVersion,
+      Collection<File> compilerAndDependencies,
+      Collection<File> libraryAndDependencies,
+      File secondaryCacheDir,
+      MavenArtifactResolver resolver,
+      Log mavenLogger)
+      throws Exception {
+    ScalaInstance scalaInstance =
+        ScalaInstances.acquireScalaInstance(
+            scalaVersion.toString(), compilerAndDependencies, libraryAndDependencies);
+    try {
+      return CompilerBridgeFactory.getCompiledBridgeJar(
+          scalaVersion, scalaInstance, secondaryCacheDir, resolver, mavenLogger);
+    } finally {
+      ScalaInstances.releaseScalaInstance(scalaInstance);
     }
   }
 
@@ -79,23 +139,55 @@ public final class SbtIncrementalCompilers {
       File javaHome,
       File cacheFile,
       CompileOrder compileOrder,
+      IncrementalOptions incOptions,
+      AnalysisFormat analysisFormat,
+      boolean asyncAnalysisWrite,
       ScalaInstance scalaInstance,
       File compilerBridgeJar,
-      Logger sbtLogger) {
+      Logger sbtLogger,
+      Reporter reporter) {
 
     Compilers compilers = makeCompilers(scalaInstance, javaHome, compilerBridgeJar);
-    AnalysisStore analysisStore = AnalysisStore.getCachedStore(FileAnalysisStore.binary(cacheFile));
-    Setup setup = makeSetup(cacheFile, sbtLogger);
+    AnalysisStore analysisStore =
+        AnalysisStores.of(cacheFile, analysisFormat, asyncAnalysisWrite, sbtLogger);
+    Setup setup = makeSetup(cacheFile, incOptions.toIncOptions(), reporter);
     IncrementalCompiler compiler = ZincUtil.defaultIncrementalCompiler();
+    FileStampCache stampCache = FileStampCache.load(stampsOf(cacheFile));
 
     return new InProcessSbtIncrementalCompiler(
-        compilers, analysisStore, setup, compiler, compileOrder, sbtLogger);
+        compilers, analysisStore, setup, compiler, compileOrder, stampCache, sbtLogger);
+  }
+
+  /**
+   * Waits for the analyses written in background, to be called before the class loader of the
+   * plugin is closed.
+   */
+  public static void awaitAnalysisWrites() {
+    AnalysisStores.awaitPendingWrites();
+  }
+
+  /**
+   * Waits for the analysis of a compilation written in background.
+   *
+   * @throws IOException if it could not be saved
+   */
+  public static void awaitAnalysisWrite(File cacheFile) throws IOException {
+    AnalysisStores.awaitWrite(cacheFile);
+  }
+
+  /**
+   * Returns the file caching the hashes of the files stamped by zinc, next to the analysis file.
+   */
+  static File stampsOf(File cacheFile) {
+    return new File(cacheFile.getParentFile(), cacheFile.getName() + STAMPS_SUFFIX);
   }
 
   private static SbtIncrementalCompiler makeForkedProcess(
       File javaHome,
       File cacheFile,
       CompileOrder compileOrder,
+      IncrementalOptions incOptions,
+      AnalysisFormat analysisFormat,
       File compilerBridgeJar,
       VersionNumber scalaVersion,
       Collection<File> compilerAndDependencies,
@@ -103,84 +195,105 @@ public final class SbtIncrementalCompilers {
       Log mavenLogger,
       String[] jvmArgs,
       File javaExec,
-      List<File> pluginArtifacts) {
+      List<File> pluginArtifacts,
+      int compileServerIdleTimeout) {
 
     List<String> forkClasspath =
         pluginArtifacts.stream().map(File::getPath).collect(Collectors.toList());
 
-    return (classpathElements, sources, classesDirectory, scalacOptions, javacOptions) -> {
+    return (classpathElements, sources, classesDirectory, scalacOptions, javacOptions, metrics) -> {
       try {
-        String[] args =
+        ForkedSbtIncrementalCompilerMain.Args args =
             new ForkedSbtIncrementalCompilerMain.Args(
-                    javaHome,
-                    cacheFile,
-                    compileOrder,
-                    compilerBridgeJar,
-                    scalaVersion.toString(),
-                    compilerAndDependencies,
-                    libraryAndDependencies,
-                    classpathElements,
-                    sources,
-                    classesDirectory,
-                    scalacOptions,
-                    javacOptions,
-                    mavenLogger.isDebugEnabled())
-                .generateArgs();
+                javaHome,
+                cacheFile,
+                compileOrder,
+                incOptions,
+                analysisFormat,
+                compilerBridgeJar,
+                scalaVersion.toString(),
+                compilerAndDependencies,
+                libraryAndDependencies,
+                classpathElements,
+                sources,
+                classesDirectory,
+                scalacOptions,
+                javacOptions,
+                mavenLogger.isDebugEnabled());
+
+        // the forked compiler may read the analyses written in background by this JVM
+        AnalysisStores.awaitPendingWrites();
+
+        // the diagnostics of the forked compiler are reported as in process
+        Reporter reporter =
+            new LoggedReporter(MAXIMUM_ERRORS, new MavenLoggerSbtAdapter(mavenLogger), pos -> pos);
+        CompileEvents.Listener listener = CompileEvents.toMaven(mavenLogger, reporter, metrics);
+        if (compileServerIdleTimeout >= 0) {
+          CompileServers.compile(
+              args,
+              forkClasspath,
+              jvmArgs,
+              javaExec,
+              compileServerIdleTimeout,
+              listener,
+              mavenLogger);
+          return;
+        }
 
         Fork fork =
             new Fork(
                 ForkedSbtIncrementalCompilerMain.class.getName(),
                 forkClasspath,
                 jvmArgs,
-                args,
+                args.generateArgs(),
                 javaExec);
 
-        fork.run(
-            new LogOutputStream() {
-              private final ForkLogger forkLogger =
-                  new ForkLogger() {
-                    @Override
-                    public void onException(Exception t) {
-                      mavenLogger.error(t);
-                    }
-
-                    @Override
-                    public void onError(String content) {
-                      mavenLogger.error(content);
-                    }
-
-                    @Override
-                    public void onWarn(String content) {
-                      mavenLogger.warn(content);
-                    }
-
-                    @Override
-                    public void onInfo(String content) {
-                      mavenLogger.info(content);
-                    }
-
-                    @Override
-                    public void onDebug(String content) {
-                      mavenLogger.debug(content);
-                    }
-                  };
-
-              @Override
-              protected void processLine(String line, int level) {
-                forkLogger.processLine(line);
-              }
-
-              public void close() throws IOException {
-                forkLogger.forceNextLineToFlush();
-                super.close();
-              }
-            });
+        // stdout carries the events of the compilation, stderr anything else printed by the JVM
+        Process process = fork.start(false);
+        try {
+          Thread stderr = logLines(process.getErrorStream(), mavenLogger);
+          boolean succeeded;
+          try (InputStream events = process.getInputStream()) {
+            succeeded = new CompileEvents.Reader(events).read(listener);
+          } catch (EOFException e) {
+            // ended without result, its exit value tells why
+            succeeded = false;
+          }
+          int exitValue = process.waitFor();
+          stderr.join();
+          if (!succeeded || exitValue != 0) {
+            throw new IOException("command line returned non-zero value:" + exitValue);
+          }
+        } finally {
+          process.destroy();
+        }
       } catch (Exception e) {
         throw new RuntimeException(e);
       }
     };
   }
 
+  /** Logs the lines of the stream in background, until its end. */
+  private static Thread logLines(InputStream stream, Log mavenLogger) {
+    Thread thread =
+        new Thread(
+            () -> {
+              try (BufferedReader reader =
+                  new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                  mavenLogger.info(line);
+                }
+              } catch (IOException e) {
+                // life...
+              }
+            },
+            "forked-compiler-output");
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
+
   private static Compilers makeCompilers(
       ScalaInstance scalaInstance, File javaHome, File compilerBridgeJar) {
     ScalaCompiler scalaCompiler =
@@ -189,14 +302,14 @@ public final class SbtIncrementalCompilers {
             ZincCompilerUtil.constantBridgeProvider(scalaInstance, compilerBridgeJar), // provider
             ClasspathOptionsUtil.auto(), // classpathOptions
             new FunctionWrappers.FromJavaConsumer<>(noop -> {}), // onArgsHandler
-            Option.apply(null) // classLoaderCache
+            Option.apply(ScalaInstances.classLoaderCache(scalaInstance)) // classLoaderCache
             );
 
     return ZincUtil.compilers(
         scalaInstance, ClasspathOptionsUtil.boot(), Option.apply(javaHome.toPath()), scalaCompiler);
   }
 
-  private static Setup makeSetup(File cacheFile, xsbti.Logger sbtLogger) {
+  private static Setup makeSetup(File cacheFile, IncOptions incOptions, Reporter reporter) {
     PerClasspathEntryLookup lookup =
         new PerClasspathEntryLookup() {
           @Override
@@ -213,34 +326,33 @@ public final class SbtIncrementalCompilers {
               }
             }
 
-            if (analysisStoreFileName != null) {
-              File analysisStoreFile =
-                  path.getParent().resolve("analysis").resolve(analysisStoreFileName).toFile();
-              if (analysisStoreFile.exists()) {
-                return AnalysisStore.getCachedStore(FileAnalysisStore.binary(analysisStoreFile))
-                    .get()
-                    .map(AnalysisContents::getAnalysis);
-              }
-            }
-            return Optional.empty();
+            return analysisStoreFileName == null
+                ? Optional.empty()
+                : UpstreamAnalysisCache.get()
+                    .analysis(
+                        path.getParent()
+                            .resolve("analysis")
+                            .resolve(analysisStoreFileName)
+                            .toFile());
           }
 
           @Override
           public DefinesClass definesClass(VirtualFile classpathEntry) {
             return classpathEntry.name().equals("rt.jar")
                 ? className -> false
-                : Locate.definesClass(classpathEntry);
+                : DefinesClassCache.definesClass(((PathBasedFile) classpathEntry).toPath());
           }
         };
 
     return Setup.of(
         lookup, // lookup
         false, // skip
-        cacheFile, // cacheFile
+        cacheFile.toPath(), // cacheFile
         CompilerCache.fresh(), // cache
-        IncOptions.of(), // incOptions
-        new LoggedReporter(100, sbtLogger, pos -> pos), // reporter
+        incOptions, // incOptions
+        reporter, // reporter
         Optional.empty(), // optionProgress
+        Optional.empty(), // earlyAnalysisStore
         new T2[] {});
   }
 }
@@ -5,16 +5,28 @@
 package sbt_inc;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.*;
 import sbt.internal.inc.ScalaInstance;
+import sbt.internal.inc.classpath.ClassLoaderCache;
 import scala.Option;
 import scala_maven.ScalaCompilerLoader;
 
 public final class ScalaInstances {
 
+  /** Default number of idle Scala instances kept warm in the JVM. */
+  public static final int DEFAULT_CACHE_SIZE = 4;
+
+  // access-ordered, so the first entry is the least recently used one
+  private static final Map<Key, Entry> CACHE = new LinkedHashMap<>(16, 0.75f, true);
+  private static final Map<xsbti.compile.ScalaInstance, Entry> LEASES = new IdentityHashMap<>();
+  private static int cacheSize = DEFAULT_CACHE_SIZE;
+
+  private ScalaInstances() {}
+
   static ScalaInstance makeScalaInstance(
       String scalaVersion,
       Collection<File> compilerAndDependencies,
@@ -42,6 +54,92 @@ public final class ScalaInstances {
         Option.apply(scalaVersion));
   }
 
+  /**
+   * Returns a Scala instance shared by every compilation of the JVM (eg all modules of a reactor)
+   * using the same Scala version and the same compiler and library jars, so the compiler classes
+   * stay loaded and JIT-compiled between compilations. Every call must be balanced by a call to
+   * {@link #releaseScalaInstance(xsbti.compile.ScalaInstance)}.
+   */
+  static synchronized ScalaInstance acquireScalaInstance(
+      String scalaVersion,
+      Collection<File> compilerAndDependencies,
+      Collection<File> libraryAndDependencies) {
+    Key key = new Key(scalaVersion, compilerAndDependencies, libraryAndDependencies);
+    Entry entry = CACHE.get(key);
+    if (entry == null) {
+      entry =
+          new Entry(
+              makeScalaInstance(scalaVersion, compilerAndDependencies, libraryAndDependencies));
+      CACHE.put(key, entry);
+      LEASES.put(entry.instance, entry);
+    }
+    // leased before the eviction, so a new entry beyond the cache size is not closed right away
+    entry.refCount++;
+    evictLeastRecentlyUsed();
+    return entry.instance;
+  }
+
+  /**
+   * Gives back a Scala instance obtained with {@link #acquireScalaInstance(String, Collection,
+   * Collection)}. Its class loaders are closed once it is no longer used and no longer cached.
+   * Instances not created by the cache are ignored.
+   */
+  static synchronized void releaseScalaInstance(xsbti.compile.ScalaInstance instance) {
+    Entry entry = LEASES.get(instance);
+    if (entry != null && entry.refCount > 0) {
+      entry.refCount--;
+      closeIfUnused(entry);
+    }
+  }
+
+  /**
+   * Returns the cache of the class loaders (eg compiler bridge) built on top of a Scala instance
+   * obtained with {@link #acquireScalaInstance(String, Collection, Collection)}, or null for an
+   * instance not created by the cache. The class loaders are closed with the Scala instance.
+   */
+  static synchronized ClassLoaderCache classLoaderCache(xsbti.compile.ScalaInstance instance) {
+    Entry entry = LEASES.get(instance);
+    return entry == null ? null : entry.classLoaderCache;
+  }
+
+  /**
+   * Sets the maximum number of Scala instances kept in the cache, 0 disables the cache (instances
+   * are discarded once released).
+   */
+  static synchronized void setCacheSize(int size) {
+    cacheSize = Math.max(0, size);
+    evictLeastRecentlyUsed();
+  }
+
+  private static void evictLeastRecentlyUsed() {
+    Iterator<Entry> it = CACHE.values().iterator();
+    while (CACHE.size() > cacheSize && it.hasNext()) {
+      Entry eldest = it.next();
+      it.remove();
+      eldest.evicted = true;
+      closeIfUnused(eldest);
+    }
+  }
+
+  private static void closeIfUnused(Entry entry) {
+    if (entry.evicted && entry.refCount == 0) {
+      LEASES.remove(entry.instance);
+      entry.classLoaderCache.close();
+      close(entry.instance.loaderCompilerOnly());
+      close(entry.instance.loaderLibraryOnly());
+    }
+  }
+
+  private static void close(ClassLoader loader) {
+    if (loader instanceof URLClassLoader) {
+      try {
+        ((URLClassLoader) loader).close();
+      } catch (IOException e) {
+        // life...
+      }
+    }
+  }
+
   private static URL[] toUrls(Collection<File> files) {
     return files.stream()
         .map(
@@ -54,4 +152,59 @@ public final class ScalaInstances {
             })
         .toArray(URL[]::new);
   }
+
+  private static final class Entry {
+    final ScalaInstance instance;
+    final ClassLoaderCache classLoaderCache;
+    int refCount;
+    boolean evicted;
+
+    Entry(ScalaInstance instance) {
+      this.instance = instance;
+      this.classLoaderCache = new ClassLoaderCache(instance.loaderCompilerOnly());
+    }
+  }
+
+  /**
+   * Identifies a Scala instance by its version and its jars, including their size and last
+   * modification time so a rebuilt jar (eg a SNAPSHOT) is not served from the cache.
+   */
+  private static final class Key {
+    private final String scalaVersion;
+    private final List<String> compilerJars;
+    private final List<String> libraryJars;
+
+    Key(String scalaVersion, Collection<File> compilerJars, Collection<File> libraryJars) {
+      this.scalaVersion = scalaVersion;
+      this.compilerJars = stamps(compilerJars);
+      this.libraryJars = stamps(libraryJars);
+    }
+
+    private static List<String> stamps(Collection<File> files) {
+      List<String> stamps = new ArrayList<>(files.size());
+      for (File file : files) {
+        stamps.add(file.getAbsolutePath() + ':' + file.length() + ':' + file.lastModified());
+      }
+      return stamps;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) o;
+      return scalaVersion.equals(key.scalaVersion)
+          && compilerJars.equals(key.compilerJars)
+          && libraryJars.equals(key.libraryJars);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(scalaVersion, compilerJars, libraryJars);
+    }
+  }
 }
@@ -0,0 +1,65 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package sbt_inc;
+
+import util.CompileMetrics;
+import xsbti.Logger;
+import xsbti.Reporter;
+import xsbti.VirtualFile;
+import xsbti.compile.*;
+
+/** Javac of zinc, timed in the metrics of a compilation. */
+final class TimedJavac implements JavaCompiler {
+  private final JavaCompiler javac;
+  private final CompileMetrics metrics;
+  private final PhaseTimer phases;
+
+  private TimedJavac(JavaCompiler javac, CompileMetrics metrics, PhaseTimer phases) {
+    this.javac = javac;
+    this.metrics = metrics;
+    this.phases = phases;
+  }
+
+  /** Returns {@code compilers} with a timed javac. */
+  static Compilers of(Compilers compilers, CompileMetrics metrics, PhaseTimer phases) {
+    JavaTools tools = compilers.javaTools();
+    return compilers.withJavaTools(
+        new JavaTools() {
+          private final JavaCompiler javac = new TimedJavac(tools.javac(), metrics, phases);
+
+          @Override
+          public JavaCompiler javac() {
+            return javac;
+          }
+
+          @Override
+          public Javadoc javadoc() {
+            return tools.javadoc();
+          }
+        });
+  }
+
+  @Override
+  public boolean run(
+      VirtualFile[] sources,
+      String[] options,
+      Output output,
+      IncToolOptions incToolOptions,
+      Reporter reporter,
+      Logger log) {
+    phases.stop();
+    long n0 = System.nanoTime();
+    try {
+      return javac.run(sources, options, output, incToolOptions, reporter, log);
+    } finally {
+      metrics.addTime("javac", System.nanoTime() - n0);
+    }
+  }
+
+  @Override
+  public boolean supportsDirectToJar() {
+    return javac.supportsDirectToJar();
+  }
+}
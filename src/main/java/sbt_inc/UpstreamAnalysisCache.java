@@ -0,0 +1,123 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package sbt_inc;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.*;
+import java.util.function.Function;
+import xsbti.compile.AnalysisContents;
+import xsbti.compile.CompileAnalysis;
+
+/**
+ * Analyses of the upstream modules (eg {@code target/analysis/compile} of a module of the reactor)
+ * shared by every compilation of the JVM, so they are deserialized once instead of once per
+ * downstream module and per compilation. An entry is reloaded when the size or the last
+ * modification time of its file changed. Analyses are softly referenced (the GC may drop them under
+ * memory pressure), and the least recently used ones are dropped once the total size of their files
+ * exceeds the memory cap.
+ */
+final class UpstreamAnalysisCache {
+
+  /** Default cap on the total size of the cached analysis files. */
+  static final long DEFAULT_MAX_BYTES = 512L * 1024 * 1024;
+
+  private static final UpstreamAnalysisCache INSTANCE =
+      new UpstreamAnalysisCache(
+          DEFAULT_MAX_BYTES, file -> AnalysisStores.read(file).map(AnalysisContents::getAnalysis));
+
+  // access-ordered, so the first entry is the least recently used one
+  private final Map<File, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+  private final Function<File, Optional<CompileAnalysis>> loader;
+  private final long maxBytes;
+  private long bytes;
+  private long hits;
+  private long misses;
+
+  UpstreamAnalysisCache(long maxBytes, Function<File, Optional<CompileAnalysis>> loader) {
+    this.maxBytes = maxBytes;
+    this.loader = loader;
+  }
+
+  static UpstreamAnalysisCache get() {
+    return INSTANCE;
+  }
+
+  /** Returns the analysis stored in {@code file}, empty if the file doesn't exist. */
+  Optional<CompileAnalysis> analysis(File file) {
+    AnalysisStores.awaitPendingWrite(file);
+    long length = file.length();
+    long lastModified = file.lastModified();
+    if (lastModified == 0L) {
+      synchronized (this) {
+        remove(file);
+      }
+      return Optional.empty();
+    }
+
+    synchronized (this) {
+      Entry entry = cache.get(file);
+      if (entry != null && entry.length == length && entry.lastModified == lastModified) {
+        CompileAnalysis analysis = entry.analysis.get();
+        if (analysis != null) {
+          hits++;
+          return Optional.of(analysis);
+        }
+      }
+      misses++;
+    }
+
+    // load outside of the lock, concurrent loads of the same file are harmless
+    Optional<CompileAnalysis> analysis = loader.apply(file);
+
+    synchronized (this) {
+      remove(file);
+      if (analysis.isPresent() && length <= maxBytes) {
+        cache.put(file, new Entry(length, lastModified, analysis.get()));
+        bytes += length;
+        Iterator<Entry> it = cache.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+          bytes -= it.next().length;
+          it.remove();
+        }
+      }
+    }
+    return analysis;
+  }
+
+  private void remove(File file) {
+    Entry previous = cache.remove(file);
+    if (previous != null) {
+      bytes -= previous.length;
+    }
+  }
+
+  synchronized long hits() {
+    return hits;
+  }
+
+  synchronized long misses() {
+    return misses;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        "upstream analysis cache: %d entries (%d KB), %d hits, %d misses",
+        cache.size(), bytes / 1024, hits, misses);
+  }
+
+  private static final class Entry {
+    final long length;
+    final long lastModified;
+    final SoftReference<CompileAnalysis> analysis;
+
+    Entry(long length, long lastModified, CompileAnalysis analysis) {
+      this.length = length;
+      this.lastModified = lastModified;
+      this.analysis = new SoftReference<>(analysis);
+    }
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package scala_maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.maven.execution.BuildFailure;
+import org.apache.maven.execution.BuildSummary;
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import sbt_inc.SbtIncrementalCompilers;
+
+/**
+ * Waits for the analyses written in background at the end of the project that produced them, and
+ * fails the project if one could not be saved, delegating the events to the listener it replaces.
+ * The remaining writes are awaited at the end of the Maven session. A shutdown hook is too late:
+ * Maven closes the class realm of the plugin before exiting, and the write then fails to load the
+ * classes of zinc.
+ */
+final class AnalysisWritesListener implements ExecutionListener {
+  private final ExecutionListener delegate;
+  private final Map<MavenProject, Set<File>> analyses = new ConcurrentHashMap<>();
+
+  private AnalysisWritesListener(ExecutionListener delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * Installs the listener in the session, once, and tracks the analysis file written by the
+   * compilations of the project.
+   */
+  static void register(MavenSession session, MavenProject project, File cacheFile) {
+    if (session == null || session.getRequest() == null) {
+      return;
+    }
+    MavenExecutionRequest request = session.getRequest();
+    AnalysisWritesListener listener;
+    synchronized (request) {
+      ExecutionListener current = request.getExecutionListener();
+      if (current instanceof AnalysisWritesListener) {
+        listener = (AnalysisWritesListener) current;
+      } else {
+        listener = new AnalysisWritesListener(current);
+        request.setExecutionListener(listener);
+      }
+    }
+    listener.analyses.computeIfAbsent(project, p -> ConcurrentHashMap.newKeySet()).add(cacheFile);
+  }
+
+  @Override
+  public void projectSucceeded(ExecutionEvent event) {
+    Set<File> files = analyses.remove(event.getProject());
+    if (files != null) {
+      for (File file : files) {
+        try {
+          SbtIncrementalCompilers.awaitAnalysisWrite(file);
+        } catch (IOException e) {
+          fail(event.getSession(), event.getProject(), e);
+        }
+      }
+    }
+    if (delegate != null) {
+      delegate.projectSucceeded(event);
+    }
+  }
+
+  /** Reports the failure of the project, as done by Maven for a failed mojo. */
+  private static void fail(MavenSession session, MavenProject project, Exception e) {
+    MavenExecutionResult result = session.getResult();
+    BuildSummary summary = result.getBuildSummary(project);
+    result.addException(e);
+    result.addBuildSummary(new BuildFailure(project, summary == null ? 0 : summary.getTime(), e));
+  }
+
+  @Override
+  public void sessionEnded(ExecutionEvent event) {
+    SbtIncrementalCompilers.awaitAnalysisWrites();
+    if (delegate != null) {
+      delegate.sessionEnded(event);
+    }
+  }
+
+  @Override
+  public void projectDiscoveryStarted(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.projectDiscoveryStarted(event);
+    }
+  }
+
+  @Override
+  public void sessionStarted(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.sessionStarted(event);
+    }
+  }
+
+  @Override
+  public void projectSkipped(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.projectSkipped(event);
+    }
+  }
+
+  @Override
+  public void projectStarted(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.projectStarted(event);
+    }
+  }
+
+  @Override
+  public void projectFailed(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.projectFailed(event);
+    }
+  }
+
+  @Override
+  public void mojoSkipped(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.mojoSkipped(event);
+    }
+  }
+
+  @Override
+  public void mojoStarted(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.mojoStarted(event);
+    }
+  }
+
+  @Override
+  public void mojoSucceeded(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.mojoSucceeded(event);
+    }
+  }
+
+  @Override
+  public void mojoFailed(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.mojoFailed(event);
+    }
+  }
+
+  @Override
+  public void forkStarted(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.forkStarted(event);
+    }
+  }
+
+  @Override
+  public void forkSucceeded(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.forkSucceeded(event);
+    }
+  }
+
+  @Override
+  public void forkFailed(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.forkFailed(event);
+    }
+  }
+
+  @Override
+  public void forkedProjectStarted(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.forkedProjectStarted(event);
+    }
+  }
+
+  @Override
+  public void forkedProjectSucceeded(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.forkedProjectSucceeded(event);
+    }
+  }
+
+  @Override
+  public void forkedProjectFailed(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.forkedProjectFailed(event);
+    }
+  }
+}
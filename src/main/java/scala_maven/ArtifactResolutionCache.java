@@ -0,0 +1,98 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package scala_maven;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.MavenExecutionRequest;
+
+/**
+ * Artifacts resolved during a Maven session, shared by the mojos of every module: the Scala
+ * compiler and library (and their dependencies) are resolved by each execution of each module,
+ * several times, always to the same artifacts. A resolution running in a module of a parallel build
+ * is awaited by the others instead of being run again. A failure is not cached.
+ */
+final class ArtifactResolutionCache {
+
+  private static final Map<MavenExecutionRequest, ArtifactResolutionCache> SESSIONS =
+      new WeakHashMap<>();
+
+  private final Map<String, CompletableFuture<Set<Artifact>>> resolved = new ConcurrentHashMap<>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Returns the cache of the session, a new one every time if there is no session.
+   *
+   * @param request the request of the session
+   */
+  static ArtifactResolutionCache of(MavenExecutionRequest request) {
+    if (request == null) {
+      return new ArtifactResolutionCache();
+    }
+    synchronized (SESSIONS) {
+      return SESSIONS.computeIfAbsent(request, k -> new ArtifactResolutionCache());
+    }
+  }
+
+  /**
+   * Returns the artifacts resolved for the key, resolving them the first time.
+   *
+   * @param key the coordinates, classifier, transitivity and repositories of the resolution
+   * @return an immutable set
+   */
+  Set<Artifact> get(String key, Supplier<Set<Artifact>> resolution) {
+    CompletableFuture<Set<Artifact>> future = new CompletableFuture<>();
+    CompletableFuture<Set<Artifact>> previous = resolved.putIfAbsent(key, future);
+    if (previous != null) {
+      try {
+        Set<Artifact> artifacts = previous.get();
+        hits.incrementAndGet();
+        return artifacts;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("interrupted while waiting for the resolution of " + key);
+      } catch (ExecutionException e) {
+        // the failure is reported by the module that ran the resolution, try again
+        return get(key, resolution);
+      }
+    }
+    misses.incrementAndGet();
+    try {
+      Set<Artifact> artifacts = Collections.unmodifiableSet(resolution.get());
+      future.complete(artifacts);
+      return artifacts;
+    } catch (RuntimeException | Error e) {
+      resolved.remove(key, future);
+      future.completeExceptionally(e);
+      throw e;
+    }
+  }
+
+  long hits() {
+    return hits.get();
+  }
+
+  long misses() {
+    return misses.get();
+  }
+
+  @Override
+  public String toString() {
+    long h = hits();
+    long total = h + misses();
+    return String.format(
+        "artifact resolutions: %d, from the session cache: %d (%d%%)",
+        total, h, total == 0 ? 0 : h * 100 / total);
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package scala_maven;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.StringUtils;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import sbt_inc.SbtIncrementalCompilers;
+import scala_maven_dependency.ArtifactIds;
+import scala_maven_dependency.ArtifactIds4Scala2;
+import scala_maven_dependency.ArtifactIds4Scala3;
+import scala_maven_dependency.Context;
+import scala_maven_dependency.Context4ScalaRemote;
+
+/**
+ * Compiler bridges of all the Scala versions of a reactor, resolved and compiled in parallel before
+ * the modules need them, instead of one at a time on the critical path of a cold build (eg a
+ * reactor cross-compiled for 2.12, 2.13 and 3 on a new CI agent).
+ */
+final class CompilerBridges {
+
+  static final String PLUGIN_KEY = "net.alchim31.maven:scala-maven-plugin";
+  private static final String DEFAULT_SCALA_ORGANIZATION = "org.scala-lang";
+
+  // the requests of the sessions whose bridges are prefetched, shared by the clones of the session
+  private static final Set<MavenExecutionRequest> PREFETCHED =
+      Collections.newSetFromMap(new WeakHashMap<>());
+
+  private CompilerBridges() {}
+
+  /** A Scala version used by modules of the reactor. */
+  static final class ScalaSetup {
+    final String organization;
+    final VersionNumber version;
+
+    ScalaSetup(String organization, VersionNumber version) {
+      this.organization = organization;
+      this.version = version;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof ScalaSetup)) {
+        return false;
+      }
+      ScalaSetup that = (ScalaSetup) o;
+      return organization.equals(that.organization) && version.equals(that.version);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(organization, version);
+    }
+
+    @Override
+    public String toString() {
+      return organization + ':' + version;
+    }
+  }
+
+  /**
+   * Finds the Scala versions of the projects using the plugin, as their compilations will: the
+   * scalaVersion parameter, else the version of the Scala library in the dependencies. Projects
+   * compiled with a local Scala distribution (scalaHome) are skipped.
+   */
+  static Set<ScalaSetup> scalaSetupsOf(List<MavenProject> projects, Properties userProperties) {
+    Set<ScalaSetup> setups = new LinkedHashSet<>();
+    for (MavenProject project : projects) {
+      Plugin plugin = project.getPlugin(PLUGIN_KEY);
+      if (plugin == null) {
+        continue;
+      }
+      Xpp3Dom configuration = (Xpp3Dom) plugin.getConfiguration();
+      if (parameter(project, configuration, userProperties, "scalaHome", "scala.home") != null) {
+        continue;
+      }
+      String organization =
+          parameter(
+              project, configuration, userProperties, "scalaOrganization", "scala.organization");
+      if (organization == null) {
+        organization = DEFAULT_SCALA_ORGANIZATION;
+      }
+      String version =
+          parameter(project, configuration, userProperties, "scalaVersion", "scala.version");
+      if (version == null) {
+        version =
+            ScalaMojoSupport.findVersionFromDependencies(
+                project,
+                project.getDependencies(),
+                organization,
+                ArtifactIds.SCALA_LIBRARY_PATTERN);
+      }
+      if (version != null) {
+        setups.add(new ScalaSetup(organization, new VersionNumber(version)));
+      }
+    }
+    return setups;
+  }
+
+  private static String parameter(
+      MavenProject project,
+      Xpp3Dom configuration,
+      Properties userProperties,
+      String name,
+      String property) {
+    Xpp3Dom child = configuration == null ? null : configuration.getChild(name);
+    String value =
+        child != null
+            ? child.getValue()
+            : userProperties.getProperty(property, project.getProperties().getProperty(property));
+    return StringUtils.isEmpty(value) ? null : value;
+  }
+
+  /**
+   * Starts preparing the bridges, in parallel on daemon threads.
+   *
+   * @return the bridge jar of each Scala setup, once prepared
+   */
+  static Map<ScalaSetup, Future<File>> prepare(
+      Collection<ScalaSetup> setups,
+      File secondaryCacheDir,
+      MavenArtifactResolver resolver,
+      Log mavenLogger) {
+    Map<ScalaSetup, Future<File>> bridges = new LinkedHashMap<>();
+    if (setups.isEmpty()) {
+      return bridges;
+    }
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            Math.min(setups.size(), Runtime.getRuntime().availableProcessors()),
+            r -> {
+              Thread t = new Thread(r, "scala-maven-plugin-bridge-preparer");
+              t.setDaemon(true);
+              return t;
+            });
+    try {
+      for (ScalaSetup setup : setups) {
+        bridges.put(
+            setup,
+            executor.submit(
+                () -> {
+                  try {
+                    return prepare(setup, secondaryCacheDir, resolver, mavenLogger);
+                  } catch (Exception e) {
+                    mavenLogger.debug("failed to prepare the compiler bridge of Scala " + setup, e);
+                    throw e;
+                  }
+                }));
+      }
+    } finally {
+      // the threads exit once the bridges are prepared
+      executor.shutdown();
+    }
+    return bridges;
+  }
+
+  private static File prepare(
+      ScalaSetup setup, File secondaryCacheDir, MavenArtifactResolver resolver, Log mavenLogger)
+      throws Exception {
+    ArtifactIds aids =
+        setup.version.major == 3 ? new ArtifactIds4Scala3(setup.version) : new ArtifactIds4Scala2();
+    Context context =
+        new Context4ScalaRemote(setup.version, setup.version, aids, setup.organization, resolver);
+    return SbtIncrementalCompilers.prepareCompilerBridge(
+        setup.version,
+        files(context.findCompilerAndDependencies()),
+        files(context.findLibraryAndDependencies()),
+        secondaryCacheDir,
+        resolver,
+        mavenLogger);
+  }
+
+  private static List<File> files(Set<Artifact> artifacts) {
+    return artifacts.stream().map(Artifact::getFile).collect(Collectors.toList());
+  }
+
+  /**
+   * Prepares in background, once per session, the bridges of the Scala versions of the other
+   * modules of the reactor. A failure is only logged in debug: the compilation needing the bridge
+   * prepares it again, and reports it.
+   */
+  static void prefetch(
+      MavenSession session,
+      File secondaryCacheDir,
+      MavenArtifactResolver resolver,
+      Log mavenLogger) {
+    if (session == null || session.getRequest() == null || session.getProjects().size() < 2) {
+      return;
+    }
+    synchronized (PREFETCHED) {
+      if (!PREFETCHED.add(session.getRequest())) {
+        return;
+      }
+    }
+    Set<ScalaSetup> setups = scalaSetupsOf(session.getProjects(), session.getUserProperties());
+    if (setups.size() < 2) {
+      // the bridge is needed right away by the compilation
+      return;
+    }
+    mavenLogger.info("Preparing compiler bridges in background for Scala " + setups);
+    prepare(setups, secondaryCacheDir, resolver, mavenLogger);
+  }
+}
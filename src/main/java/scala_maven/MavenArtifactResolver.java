@@ -4,12 +4,24 @@
  */
 package scala_maven;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.artifact.resolver.ArtifactResolutionRequest;
+import org.apache.maven.execution.MavenExecutionRequest;
 import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
 import org.apache.maven.repository.RepositorySystem;
 
 public class MavenArtifactResolver {
@@ -20,50 +32,180 @@ public class MavenArtifactResolver {
   /** Constant {@link String} for "jar". Used to specify the Maven JAR artifact type. */
   public static final String JAR = "jar";
 
+  /** Parallel downloads of a batch, the same property as the resolver of Maven. */
+  private static final int THREADS = Integer.getInteger("maven.artifact.threads", 5);
+
   private final RepositorySystem repositorySystem;
-  private final MavenSession session;
+  private final MavenExecutionRequest request;
+  private final Supplier<MavenProject> currentProject;
+  private final ArtifactResolutionCache cache;
 
   public MavenArtifactResolver(RepositorySystem repositorySystem, MavenSession session) {
+    this(repositorySystem, session.getRequest(), session::getCurrentProject);
+  }
+
+  /**
+   * Creates a resolver from the parts of the session it uses.
+   *
+   * @param request the request of the session, its settings and local repository
+   * @param currentProject the project being built, whose remote repositories are used
+   */
+  MavenArtifactResolver(
+      RepositorySystem repositorySystem,
+      MavenExecutionRequest request,
+      Supplier<MavenProject> currentProject) {
     this.repositorySystem = repositorySystem;
-    this.session = session;
+    this.request = request;
+    this.currentProject = currentProject;
+    this.cache = ArtifactResolutionCache.of(request);
+  }
+
+  /** The hits and misses of the resolutions, shared by the resolvers of the session. */
+  public String cacheStatistics() {
+    return cache.toString();
   }
 
   public Artifact getJar(String groupId, String artifactId, String version, String classifier) {
-    Artifact artifact = createJarArtifact(groupId, artifactId, version, classifier);
-    Set<Artifact> resolvedArtifacts = resolve(artifact, false);
-    if (resolvedArtifacts.isEmpty()) {
-      throw new NoSuchElementException(
-          String.format(
-              "Could not resolve artifact %s:%s:%s:%s", groupId, artifactId, version, classifier));
-    }
-    return resolvedArtifacts.iterator().next();
+    return getJar(createJar(groupId, artifactId, version, classifier), remoteRepositories());
   }
 
   public Set<Artifact> getJarAndDependencies(
       String groupId, String artifactId, String version, String classifier) {
-    Artifact artifact = createJarArtifact(groupId, artifactId, version, classifier);
-    return resolve(artifact, true);
+    Artifact artifact = createJar(groupId, artifactId, version, classifier);
+    return resolve(artifact, true, remoteRepositories());
   }
 
-  private Artifact createJarArtifact(
-      String groupId, String artifactId, String version, String classifier) {
+  /**
+   * Resolves the jars without their dependencies, the missing ones being downloaded in parallel.
+   *
+   * @param jars created by {@link #createJar}
+   * @throws NoSuchElementException if a jar can not be resolved
+   */
+  public Set<Artifact> getJars(Collection<Artifact> jars) {
+    List<ArtifactRepository> repositories = remoteRepositories();
+    if (jars.size() < 2) {
+      Set<Artifact> resolved = new LinkedHashSet<>();
+      for (Artifact jar : jars) {
+        resolved.add(getJar(jar, repositories));
+      }
+      return resolved;
+    }
+    ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(jars.size(), THREADS));
+    try {
+      List<Future<Artifact>> futures = new ArrayList<>();
+      for (Artifact jar : jars) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  // the resolver looks up its components with the class loader of the plugin
+                  Thread.currentThread().setContextClassLoader(contextClassLoader);
+                  return getJar(jar, repositories);
+                }));
+      }
+      Set<Artifact> resolved = new LinkedHashSet<>();
+      for (Future<Artifact> future : futures) {
+        resolved.add(future.get());
+      }
+      return resolved;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while resolving " + jars, e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Resolves the jars and their dependencies in a single dependency collection, the conflicts
+   * between them being mediated (nearest wins), and the missing artifacts being downloaded in
+   * parallel by Maven.
+   *
+   * @param jars created by {@link #createJar}
+   */
+  public Set<Artifact> getJarsAndDependencies(Collection<Artifact> jars) {
+    if (jars.size() == 1) {
+      return resolve(jars.iterator().next(), true, remoteRepositories());
+    }
+    List<ArtifactRepository> repositories = remoteRepositories();
+    Set<Artifact> roots = new LinkedHashSet<>(jars);
+    String key =
+        roots.stream().map(Artifact::getId).sorted().collect(Collectors.toList())
+            + " with dependencies from "
+            + urls(repositories);
+    return cache.get(
+        key,
+        () ->
+            resolve(
+                newRequest(currentProject.get().getArtifact(), repositories)
+                    // the project is only the root of the collection, it is not resolved
+                    .setResolveRoot(false)
+                    .setResolveTransitively(false)
+                    .setArtifactDependencies(roots)));
+  }
+
+  /** Creates the jar artifact to resolve, eg in a batch. */
+  public Artifact createJar(String groupId, String artifactId, String version, String classifier) {
     return classifier == null
         ? repositorySystem.createArtifact(groupId, artifactId, version, JAR)
         : repositorySystem.createArtifactWithClassifier(
             groupId, artifactId, version, JAR, classifier);
   }
 
-  private Set<Artifact> resolve(Artifact artifact, boolean transitively) {
-    ArtifactResolutionRequest request =
-        new ArtifactResolutionRequest()
-            .setArtifact(artifact)
-            .setResolveRoot(true)
-            .setResolveTransitively(transitively)
-            .setServers(session.getRequest().getServers())
-            .setMirrors(session.getRequest().getMirrors())
-            .setProxies(session.getRequest().getProxies())
-            .setLocalRepository(session.getLocalRepository())
-            .setRemoteRepositories(session.getCurrentProject().getRemoteArtifactRepositories());
+  private Artifact getJar(Artifact artifact, List<ArtifactRepository> repositories) {
+    Set<Artifact> resolvedArtifacts = resolve(artifact, false, repositories);
+    if (resolvedArtifacts.isEmpty()) {
+      throw new NoSuchElementException(
+          String.format(
+              "Could not resolve artifact %s:%s:%s:%s",
+              artifact.getGroupId(),
+              artifact.getArtifactId(),
+              artifact.getVersion(),
+              artifact.getClassifier()));
+    }
+    return resolvedArtifacts.iterator().next();
+  }
+
+  private List<ArtifactRepository> remoteRepositories() {
+    return currentProject.get().getRemoteArtifactRepositories();
+  }
+
+  private static List<String> urls(List<ArtifactRepository> repositories) {
+    return repositories.stream().map(ArtifactRepository::getUrl).collect(Collectors.toList());
+  }
+
+  private Set<Artifact> resolve(
+      Artifact artifact, boolean transitively, List<ArtifactRepository> repositories) {
+    String key =
+        artifact.getId()
+            + (transitively ? " with dependencies from " : " from ")
+            + urls(repositories);
+    return cache.get(
+        key,
+        () ->
+            resolve(
+                newRequest(artifact, repositories)
+                    .setResolveRoot(true)
+                    .setResolveTransitively(transitively)));
+  }
+
+  private ArtifactResolutionRequest newRequest(
+      Artifact artifact, List<ArtifactRepository> repositories) {
+    return new ArtifactResolutionRequest()
+        .setArtifact(artifact)
+        .setServers(request.getServers())
+        .setMirrors(request.getMirrors())
+        .setProxies(request.getProxies())
+        .setLocalRepository(request.getLocalRepository())
+        .setRemoteRepositories(repositories);
+  }
+
+  private Set<Artifact> resolve(ArtifactResolutionRequest request) {
     return repositorySystem.resolve(request).getArtifacts().stream()
         .filter(art -> !Artifact.SCOPE_TEST.equals(art.getScope()))
         .collect(Collectors.toSet());
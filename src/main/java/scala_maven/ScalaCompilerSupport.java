@@ -5,15 +5,23 @@
 package scala_maven;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Instant;
 import java.util.*;
 import java.util.stream.Collectors;
 import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.ProjectDependencyGraph;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Parameter;
+import sbt_inc.AnalysisFormat;
+import sbt_inc.CompileScheduler;
+import sbt_inc.IncrementalOptions;
 import sbt_inc.SbtIncrementalCompiler;
 import sbt_inc.SbtIncrementalCompilers;
 import scala_maven_dependency.Context;
 import scala_maven_executions.JavaMainCaller;
+import util.CompileMetrics;
 import util.FileUtils;
 import util.JavaLocator;
 import xsbti.compile.CompileOrder;
@@ -55,6 +63,31 @@ public abstract class ScalaCompilerSupport extends ScalaSourceMojoSupport {
   @Parameter(property = "compileOrder", defaultValue = "Mixed")
   private CompileOrder compileOrder;
 
+  /**
+   * Format of the analysis file of sbt incremental compile: binary (zinc's protobuf format) or
+   * consistent (zinc's compressed streaming format, smaller and faster for large modules). The
+   * format of an existing file is detected, so changing it doesn't recompile the module.
+   */
+  @Parameter(property = "analysisFormat", defaultValue = "binary")
+  private AnalysisFormat analysisFormat;
+
+  /**
+   * Tuning of sbt incremental compile, eg:
+   *
+   * <pre>
+   * &lt;incOptions&gt;
+   *   &lt;transitiveStep&gt;3&lt;/transitiveStep&gt;
+   *   &lt;recompileAllFraction&gt;0.8&lt;/recompileAllFraction&gt;
+   *   &lt;useOptimizedSealed&gt;true&lt;/useOptimizedSealed&gt;
+   * &lt;/incOptions&gt;
+   * </pre>
+   *
+   * Available options: transitiveStep, recompileAllFraction, apiDebug, apiDiffContextSize,
+   * apiDumpDirectory, relationsDebug, useOptimizedSealed, strictMode, storeApis,
+   * logRecompileOnMacro, recompileOnMacroDef, ignoredScalacOptions. See {@link IncrementalOptions}.
+   */
+  @Parameter private IncrementalOptions incOptions;
+
   /**
    * Location of the incremental compile will install compiled compiler bridge jars. Default is
    * sbt's "~/.sbt/1.0/zinc/org.scala-sbt".
@@ -62,13 +95,62 @@ public abstract class ScalaCompilerSupport extends ScalaSourceMojoSupport {
   @Parameter(property = "secondaryCacheDir")
   private File secondaryCacheDir;
 
+  /**
+   * In a reactor using several Scala versions, resolve and compile in background, when the first
+   * module is compiled, the compiler bridges of the versions of the other modules (see the
+   * prepare-bridges goal).
+   */
+  @Parameter(property = "prefetchBridges", defaultValue = "true")
+  private boolean prefetchBridges;
+
+  /**
+   * Number of Scala instances (compiler and library class loaders) kept warm in the Maven JVM for
+   * the incremental compiler. Modules of a reactor using the same Scala version reuse the same
+   * already loaded and JIT-compiled compiler. Set to 0 to create a new instance for every
+   * execution.
+   */
+  @Parameter(property = "scalaInstanceCacheSize", defaultValue = "4")
+  private int scalaInstanceCacheSize;
+
+  /**
+   * When the incremental compiler is forked (see jvmArgs), send the compilations to a long-lived
+   * compile server instead of starting a new JVM for every execution. The server is shared by all
+   * the modules of the Maven session using the same jvm arguments, and keeps the compiler warm.
+   */
+  @Parameter(property = "useCompileServer", defaultValue = "false")
+  private boolean useCompileServer;
+
+  /** Number of seconds an idle compile server waits for a new compilation before exiting. */
+  @Parameter(property = "compileServerIdleTimeout", defaultValue = "300")
+  private int compileServerIdleTimeout;
+
+  /**
+   * Maximum number of Scala compilations running at the same time in the Maven JVM, shared by all
+   * the modules of a parallel build (-T). 0 (default) bounds them to the available processors, a
+   * negative value doesn't bound them. When compilations wait for a slot, the module on the longest
+   * chain of downstream modules in the reactor goes first.
+   */
+  @Parameter(property = "compileParallelism", defaultValue = "0")
+  private int compileParallelism;
+
+  /**
+   * Write the metrics of each execution (time of the steps and of the scalac phases, number of
+   * recompiled sources, peak heap) to
+   * ${project.build.directory}/scala-maven-plugin/(compile|test-compile)-metrics.json. The phases
+   * are only timed when the compiler is not forked (see jvmArgs).
+   */
+  @Parameter(property = "compileMetrics", defaultValue = "true")
+  private boolean compileMetrics;
+
   protected abstract File getOutputDir() throws Exception;
 
   protected abstract Set<File> getClasspathElements() throws Exception;
 
-  private long _lastCompileAt = -1;
+  /** Time of the last compilation, by output directory (main and test in continuous mode). */
+  private final Map<File, Long> lastCompileAt = new HashMap<>();
 
-  private SbtIncrementalCompiler incremental;
+  /** Incremental compilers, by analysis cache file (main and test in continuous mode). */
+  private final Map<File, SbtIncrementalCompiler> incrementals = new HashMap<>();
 
   /** Analysis cache file for incremental recompilation. */
   protected abstract File getAnalysisCacheFile() throws Exception;
@@ -82,9 +164,43 @@ public abstract class ScalaCompilerSupport extends ScalaSourceMojoSupport {
     }
     File outputDir = FileUtils.fileOf(getOutputDir(), useCanonicalPath);
     File analysisCacheFile = FileUtils.fileOf(getAnalysisCacheFile(), useCanonicalPath);
-    int nbFiles =
-        compile(
-            getSourceDirectories(), outputDir, analysisCacheFile, getClasspathElements(), false);
+    CompileMetrics metrics = CompileMetrics.start();
+    metrics.put("module", project.getGroupId() + ":" + project.getArtifactId());
+    metrics.put("execution", analysisCacheFile.getName());
+    metrics.put("recompileMode", recompileMode.name());
+    metrics.put("startedAt", Instant.now().toString());
+    long n0 = System.nanoTime();
+    int nbFiles = -1;
+    boolean completed = false;
+    try {
+      nbFiles =
+          compile(
+              getSourceDirectories(),
+              outputDir,
+              analysisCacheFile,
+              getClasspathElements(),
+              false,
+              metrics);
+      completed = true;
+    } finally {
+      for (SbtIncrementalCompiler incremental : incrementals.values()) {
+        incremental.close();
+      }
+      incrementals.clear();
+      metrics.addTime("total", System.nanoTime() - n0);
+      metrics.put("result", !completed || hasCompileErrors() ? "failure" : "success");
+      if (compileMetrics) {
+        File metricsFile =
+            new File(
+                project.getBuild().getDirectory(),
+                "scala-maven-plugin/" + analysisCacheFile.getName() + "-metrics.json");
+        try {
+          metrics.write(metricsFile);
+        } catch (IOException e) {
+          getLog().warn("failed to write " + metricsFile + ": " + e);
+        }
+      }
+    }
     if (hasCompileErrors()) {
       throw new MojoFailureException("scala compilation failed");
     }
@@ -110,14 +226,15 @@ public abstract class ScalaCompilerSupport extends ScalaSourceMojoSupport {
       File outputDir,
       File analysisCacheFile,
       Set<File> classpathElements,
-      boolean compileInLoop)
+      boolean compileInLoop,
+      CompileMetrics metrics)
       throws Exception {
     if (!compileInLoop && recompileMode == RecompileMode.incremental) {
       // if not compileInLoop, invoke incrementalCompile immediately
       long n0 = System.nanoTime();
       int res =
           incrementalCompile(
-              classpathElements, sourceRootDirs, outputDir, analysisCacheFile, false);
+              classpathElements, sourceRootDirs, outputDir, analysisCacheFile, false, metrics);
       getLog().info(String.format("compile in %.1f s", (System.nanoTime() - n0) / 1_000_000_000.0));
       return res;
     }
@@ -125,14 +242,46 @@ public abstract class ScalaCompilerSupport extends ScalaSourceMojoSupport {
     long t0 = System.currentTimeMillis();
     long n0 = System.nanoTime();
     LastCompilationInfo lastCompilationInfo = LastCompilationInfo.find(sourceRootDirs, outputDir);
-    if (_lastCompileAt < 0) {
-      _lastCompileAt = lastCompilationInfo.getLastSuccessfulTS();
+    long lastCompile = lastCompileAt.getOrDefault(outputDir, -1L);
+    boolean compiledInThisSession = lastCompile > 0;
+    if (lastCompile < 0) {
+      lastCompile = lastCompilationInfo.getLastSuccessfulTS();
     }
 
-    List<File> files = getFilesToCompile(sourceRootDirs, _lastCompileAt);
-
-    if (files == null) {
-      return -1;
+    List<File> files;
+    SourceManifest manifest = null;
+    Set<String> previousProducts = Collections.emptySet();
+    if (recompileMode == RecompileMode.all) {
+      List<File> sourceFiles = findSourceWithFilters(sourceRootDirs);
+      metrics.addTime("sourceScan", System.nanoTime() - n0);
+      if (sourceFiles.isEmpty()) {
+        return -1;
+      }
+      metrics.count("sources", sourceFiles.size());
+      List<String> setup = new ArrayList<>(getScalacOptions());
+      setup.add(findScalaContext().version().toString());
+      long h0 = System.nanoTime();
+      String setupHash = SourceManifest.setupOf(setup, classpathElements);
+      metrics.addTime("classpathHashing", System.nanoTime() - h0);
+      SourceManifest previous = SourceManifest.read(lastCompilationInfo.manifestFile());
+      manifest = SourceManifest.of(setupHash, sourceFiles, previous);
+      if (previous != null
+          && previous.hasSameInputs(manifest)
+          && productsExist(outputDir, previous.products())) {
+        files = Collections.emptyList();
+      } else {
+        files = sourceFiles;
+        notifyCompilation(sourceRootDirs);
+      }
+      if (previous != null) {
+        previousProducts = previous.products();
+      }
+    } else {
+      files = getFilesToCompile(sourceRootDirs, lastCompile, compiledInThisSession);
+      metrics.addTime("sourceScan", System.nanoTime() - n0);
+      if (files == null) {
+        return -1;
+      }
     }
 
     if (files.size() < 1) {
@@ -147,8 +296,9 @@ public abstract class ScalaCompilerSupport extends ScalaSourceMojoSupport {
     if (compileInLoop && recompileMode == RecompileMode.incremental) {
       // if compileInLoop, do not invoke incrementalCompile when there's no change
       int retCode =
-          incrementalCompile(classpathElements, sourceRootDirs, outputDir, analysisCacheFile, true);
-      _lastCompileAt = t1;
+          incrementalCompile(
+              classpathElements, sourceRootDirs, outputDir, analysisCacheFile, true, metrics);
+      lastCompileAt.put(outputDir, t1);
       if (retCode == 1) {
         lastCompilationInfo.setLastSuccessfulTS(t1);
       }
@@ -169,6 +319,8 @@ public abstract class ScalaCompilerSupport extends ScalaSourceMojoSupport {
     for (File f : files) {
       jcmd.addArgs(f.getAbsolutePath());
     }
+    Map<String, Long> classFiles = manifest == null ? null : SourceManifest.classFilesOf(outputDir);
+    long compileStart = System.currentTimeMillis();
     try {
       if (jcmd.run(displayCmd, !compileInLoop)) {
         lastCompilationInfo.setLastSuccessfulTS(t1);
@@ -179,9 +331,27 @@ public abstract class ScalaCompilerSupport extends ScalaSourceMojoSupport {
       compileErrors = true;
       getLog().error("exception compilation error occurred!!!", e);
     }
+    if (manifest != null) {
+      if (compileErrors) {
+        Files.deleteIfExists(lastCompilationInfo.manifestFile().toPath());
+      } else {
+        // all the sources were compiled: the classes not written again are stale
+        Set<String> products = SourceManifest.productsOf(outputDir, classFiles, compileStart);
+        for (String product : previousProducts) {
+          if (product.endsWith(".class")
+              && !products.contains(product)
+              && new File(outputDir, product).delete()) {
+            getLog().debug("deleted stale " + product);
+          }
+        }
+        manifest.withProducts(products).write(lastCompilationInfo.manifestFile());
+      }
+    }
+    metrics.count("recompiled", files.size());
+    metrics.addTime("compile", System.nanoTime() - n1);
     getLog().info(String.format("prepare-compile in %.1f s", (n1 - n0) / 1_000_000_000.0));
     getLog().info(String.format("compile in %.1f s", (System.nanoTime() - n1) / 1_000_000_000.0));
-    _lastCompileAt = t1;
+    lastCompileAt.put(outputDir, t1);
     return files.size();
   }
 
@@ -194,7 +364,8 @@ public abstract class ScalaCompilerSupport extends ScalaSourceMojoSupport {
     compileErrors = false;
   }
 
-  private List<File> getFilesToCompile(List<File> sourceRootDirs, long lastSuccessfulCompileTime)
+  private List<File> getFilesToCompile(
+      List<File> sourceRootDirs, long lastSuccessfulCompileTime, boolean compiledInThisSession)
       throws Exception {
     List<File> sourceFiles = findSourceWithFilters(sourceRootDirs);
     if (sourceFiles.size() == 0) {
@@ -211,7 +382,7 @@ public abstract class ScalaCompilerSupport extends ScalaSourceMojoSupport {
     // all .java, if there is at least one .java then add all .scala (because we
     // don't manage class dependency)
     List<File> files = new ArrayList<>(sourceFiles.size());
-    if (_lastCompileAt > 0
+    if (compiledInThisSession
         || (recompileMode != RecompileMode.all && (lastSuccessfulCompileTime > 0))) {
       List<File> modifiedScalaFiles = new ArrayList<>(sourceFiles.size());
       List<File> modifiedJavaFiles = new ArrayList<>(sourceFiles.size());
@@ -244,6 +415,15 @@ public abstract class ScalaCompilerSupport extends ScalaSourceMojoSupport {
     }
   }
 
+  private static boolean productsExist(File outputDir, Set<String> products) {
+    for (String product : products) {
+      if (!new File(outputDir, product).isFile()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   private static class LastCompilationInfo {
     static LastCompilationInfo find(List<File> sourceRootDirs, File outputDir) {
       StringBuilder hash = new StringBuilder();
@@ -263,6 +443,12 @@ public abstract class ScalaCompilerSupport extends ScalaSourceMojoSupport {
       _outputDir = outputDir;
     }
 
+    /** The manifest of the sources compiled by the last compilation, with recompileMode=all. */
+    File manifestFile() {
+      String path = _lastCompileAtFile.getPath();
+      return new File(path.substring(0, path.length() - ".timestamp".length()) + ".manifest");
+    }
+
     long getLastSuccessfulTS() {
       long back = -1;
       if (_lastCompileAtFile.exists() && _outputDir.exists() && _outputDir.list().length > 0) {
@@ -285,19 +471,30 @@ public abstract class ScalaCompilerSupport extends ScalaSourceMojoSupport {
       List<File> sourceRootDirs,
       File outputDir,
       File cacheFile,
-      boolean compileInLoop)
+      boolean compileInLoop,
+      CompileMetrics metrics)
       throws Exception {
+    long s0 = System.nanoTime();
     List<File> sources = findSourceWithFilters(sourceRootDirs);
+    metrics.addTime("sourceScan", System.nanoTime() - s0);
     if (sources.isEmpty()) {
       return -1;
     }
+    metrics.count("sources", sources.size());
 
     // TODO - Do we really need this duplicated here?
     if (!outputDir.exists()) {
       outputDir.mkdirs();
     }
 
+    SbtIncrementalCompiler incremental = incrementals.get(cacheFile);
     if (incremental == null) {
+      // the analysis is written in background, awaited at the end of the project
+      AnalysisWritesListener.register(session, project, cacheFile);
+      if (prefetchBridges) {
+        CompilerBridges.prefetch(
+            session, secondaryCacheDir, new MavenArtifactResolver(factory, session), getLog());
+      }
       Context sc = findScalaContext();
       File javaHome = JavaLocator.findHomeFromToolchain(getToolchain());
 
@@ -309,6 +506,8 @@ public abstract class ScalaCompilerSupport extends ScalaSourceMojoSupport {
               getLog(),
               cacheFile,
               compileOrder,
+              incOptions,
+              analysisFormat,
               sc.version(),
               sc.findCompilerAndDependencies().stream()
                   .map(Artifact::getFile)
@@ -318,12 +517,30 @@ public abstract class ScalaCompilerSupport extends ScalaSourceMojoSupport {
                   .collect(Collectors.toList()),
               jvmArgs,
               JavaLocator.findExecutableFromToolchain(getToolchain()),
-              pluginArtifacts.stream().map(Artifact::getFile).collect(Collectors.toList()));
+              pluginArtifacts.stream().map(Artifact::getFile).collect(Collectors.toList()),
+              scalaInstanceCacheSize,
+              useCompileServer,
+              compileServerIdleTimeout,
+              metrics);
+      incrementals.put(cacheFile, incremental);
     }
 
-    try {
-      incremental.compile(
-          classpathElements, sources, outputDir, getScalacOptions(), getJavacOptions());
+    long w0 = System.nanoTime();
+    try (CompileScheduler.Permit permit =
+        CompileScheduler.get(compileParallelism).acquire(criticalPath())) {
+      long waited = System.nanoTime() - w0;
+      metrics.addTime("compilationSlotWait", waited);
+      if (waited > 100_000_000L) {
+        getLog()
+            .info(String.format("waited %.1f s for a compilation slot", waited / 1_000_000_000.0));
+      }
+      long c0 = System.nanoTime();
+      try {
+        incremental.compile(
+            classpathElements, sources, outputDir, getScalacOptions(), getJavacOptions(), metrics);
+      } finally {
+        metrics.addTime("compile", System.nanoTime() - c0);
+      }
     } catch (xsbti.CompileFailed e) {
       if (compileInLoop) {
         compileErrors = true;
@@ -334,4 +551,12 @@ public abstract class ScalaCompilerSupport extends ScalaSourceMojoSupport {
 
     return 1;
   }
+
+  /** The number of modules of the longest chain of downstream modules of the project, in -T. */
+  private int criticalPath() {
+    ProjectDependencyGraph graph = session == null ? null : session.getProjectDependencyGraph();
+    return graph == null
+        ? 0
+        : CompileScheduler.criticalPath(project, p -> graph.getDownstreamProjects(p, false));
+  }
 }
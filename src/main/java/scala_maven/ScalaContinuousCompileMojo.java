@@ -5,16 +5,16 @@
 package scala_maven;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import scala_maven_dependency.Context;
 import scala_maven_executions.JavaMainCaller;
+import util.CompileMetrics;
 import util.FileUtils;
+import util.SourceWatcher;
 
 /**
  * Compile the main and test scala source directory in continuous (infinite loop). !! This is an
@@ -96,6 +96,27 @@ public class ScalaContinuousCompileMojo extends ScalaCompilerSupport {
   @Parameter(property = "verbose", defaultValue = "false")
   protected boolean verbose;
 
+  /**
+   * Delay in milliseconds without any change of the sources before compiling them, so a burst of
+   * changes (eg saving all the files in the editor, or switching branch) triggers one compilation.
+   */
+  @Parameter(property = "cc.debounce", defaultValue = "200")
+  protected long ccDebounce;
+
+  /** Start of the current compilation cycle of the loop, in milliseconds since the epoch. */
+  protected long cycleStartedAt;
+
+  /** Number of compilation cycles of the loop, the current one included. */
+  protected int cycles;
+
+  /** Interval between two scans of the sources, when the OS can't notify their changes. */
+  private static final long POLL_MILLIS = 1000;
+
+  private enum Scope {
+    main,
+    test
+  }
+
   @Override
   protected Set<File> getClasspathElements() {
     throw new UnsupportedOperationException("USELESS");
@@ -162,51 +183,73 @@ public class ScalaContinuousCompileMojo extends ScalaCompilerSupport {
       }
     }
 
-    getLog().info("wait for files to compile...");
-    do {
-      clearCompileErrors();
-
-      int nbFile = 0;
-      if (!mainSourceDirs.isEmpty()) {
-        nbFile =
-            compile(
-                mainSourceDirs,
-                mainOutputDir,
-                analysisCacheFile,
-                FileUtils.fromStrings(project.getCompileClasspathElements()),
-                true);
-        // If there are no source files, the compile method returns -1. Thus, to make
-        // sure we
-        // still run the tests if there are test sources, reset nbFile to zero.
-        if (nbFile == -1) nbFile = 0;
-      }
-      if (!testSourceDirs.isEmpty()) {
-        nbFile +=
-            compile(
-                testSourceDirs,
-                testOutputDir,
-                testAnalysisCacheFile,
-                FileUtils.fromStrings(project.getTestClasspathElements()),
-                true);
+    SourceWatcher<Scope> watcher = null;
+    if (!once) {
+      Map<Scope, List<File>> roots = new EnumMap<>(Scope.class);
+      roots.put(Scope.main, mainSourceDirs);
+      roots.put(Scope.test, testSourceDirs);
+      watcher = new SourceWatcher<>(roots, ccDebounce, POLL_MILLIS);
+      if (watcher.isPolling()) {
+        getLog()
+            .info("file watching unavailable, polling the sources every " + POLL_MILLIS + " ms");
       }
-      if (nbFile > 0) {
-        if (!hasCompileErrors()) {
-          postCompileActions();
-        } else {
-          getLog().info("Not running test cases due to compile error");
+    }
+
+    try {
+      Set<Scope> changed = EnumSet.allOf(Scope.class);
+      getLog().info("wait for files to compile...");
+      do {
+        clearCompileErrors();
+        cycleStartedAt = System.currentTimeMillis();
+        cycles++;
+
+        int nbFile = 0;
+        if (!mainSourceDirs.isEmpty() && changed.contains(Scope.main)) {
+          nbFile =
+              compile(
+                  mainSourceDirs,
+                  mainOutputDir,
+                  analysisCacheFile,
+                  FileUtils.fromStrings(project.getCompileClasspathElements()),
+                  true,
+                  new CompileMetrics());
+          // If there are no source files, the compile method returns -1. Thus, to make
+          // sure we
+          // still run the tests if there are test sources, reset nbFile to zero.
+          if (nbFile == -1) nbFile = 0;
+        }
+        // the test sources depend on the main ones
+        if (!testSourceDirs.isEmpty()) {
+          nbFile +=
+              compile(
+                  testSourceDirs,
+                  testOutputDir,
+                  testAnalysisCacheFile,
+                  FileUtils.fromStrings(project.getTestClasspathElements()),
+                  true,
+                  new CompileMetrics());
         }
-      }
-      if (!once) {
         if (nbFile > 0) {
-          getLog().info("wait for files to compile...");
-          Thread.sleep(5000);
-        } else {
-          Thread.sleep(3000);
+          if (!hasCompileErrors()) {
+            postCompileActions();
+          } else {
+            getLog().info("Not running test cases due to compile error");
+          }
         }
-      } else if (hasCompileErrors()) {
-        throw new MojoFailureException("scala compilation failed");
+        if (!once) {
+          if (nbFile > 0) {
+            getLog().info("wait for files to compile...");
+          }
+          changed = watcher.awaitChanges();
+        } else if (hasCompileErrors()) {
+          throw new MojoFailureException("scala compilation failed");
+        }
+      } while (!once);
+    } finally {
+      if (watcher != null) {
+        watcher.close();
       }
-    } while (!once);
+    }
   }
 
   /**
@@ -5,10 +5,21 @@
 package scala_maven;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.apache.maven.BuildFailureException;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.model.Plugin;
 import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
@@ -21,6 +32,10 @@ import org.apache.maven.shared.invoker.MavenCommandLineBuilder;
 import org.apache.maven.shared.invoker.MavenInvocationException;
 import org.apache.maven.shared.invoker.SystemOutHandler;
 import org.codehaus.plexus.util.StringUtils;
+import sbt_inc.AffectedTests;
+import scala_maven_executions.TestServer;
+import scala_maven_executions.TestServers;
+import util.JavaLocator;
 
 /**
  * Compile the main and test scala source directory then run unit test cases in continuous (infinite
@@ -29,6 +44,30 @@ import org.codehaus.plexus.util.StringUtils;
 @Mojo(name = "cctest", requiresDependencyResolution = ResolutionScope.TEST)
 public class ScalaContinuousTestMojo extends ScalaContinuousCompileMojo {
 
+  public enum TestRunner {
+    /**
+     * the JUnit 4 tests (including the ones run with JUnit 4 by ScalaTest, munit or specs2) are run
+     * by a JVM kept warm between runs, reloading only the output directories
+     */
+    warm,
+
+    /** the tests are run by a new Maven invocation of the ccTestGoals */
+    maven
+  }
+
+  /** Default includes of the surefire plugin. */
+  private static final List<Pattern> DEFAULT_TEST_INCLUDES =
+      Arrays.asList(
+          Pattern.compile("Test.*"),
+          Pattern.compile(".*Test"),
+          Pattern.compile(".*Tests"),
+          Pattern.compile(".*TestCase"));
+
+  private static final String DEFAULT_TEST_GOALS = "surefire:test";
+
+  private static final String SUREFIRE_PLUGIN_KEY =
+      "org.apache.maven.plugins:maven-surefire-plugin";
+
   @Component private Invoker invoker;
 
   /**
@@ -79,18 +118,65 @@ public class ScalaContinuousTestMojo extends ScalaContinuousCompileMojo {
    *    &lt;/plugin&gt;
    * </pre>
    */
-  @Parameter(property = "cctest.goals", defaultValue = "surefire:test")
+  @Parameter(property = "cctest.goals", defaultValue = DEFAULT_TEST_GOALS)
   private String ccTestGoals;
 
+  /**
+   * How the tests are run: {@code warm}, by a JVM kept warm between runs, reloading only the output
+   * directories, or {@code maven}, by a new Maven invocation of the ccTestGoals. The warm runner is
+   * used only when ccTestGoals is the default one, the tests use JUnit 4 without the JUnit
+   * Platform, and the project does not configure maven-surefire-plugin (includes, system
+   * properties, ...): it runs the classes matching the default includes of surefire, or the test
+   * parameter. Otherwise the tests are run with Maven.
+   */
+  @Parameter(property = "cctest.runner", defaultValue = "warm")
+  private TestRunner ccTestRunner;
+
+  /** Jvm arguments of the JVM running the tests with the warm runner. */
+  @Parameter(property = "cctest.jvmArgs")
+  private String[] ccTestJvmArgs;
+
+  /**
+   * After a change, run only the test classes affected by the sources recompiled, directly or
+   * through their dependencies, according to the analyses of the incremental compilations. All the
+   * tests are run after the first compilation.
+   */
+  @Parameter(property = "cctest.affectedOnly", defaultValue = "true")
+  private boolean ccTestAffectedOnly;
+
   @Override
   protected void postCompileActions() throws Exception {
-    if (test == null) {
+    Set<String> affected = findAffectedClasses();
+    List<String> affectedTests = null;
+    if (affected != null) {
+      affectedTests = findTestClasses(testOutputDir, test);
+      affectedTests.retainAll(affected);
+      if (affectedTests.isEmpty()) {
+        getLog().info("No test affected by the changes");
+        return;
+      }
+      getLog()
+          .info(
+              "Now running the tests affected by the changes: "
+                  + affectedTests
+                  + ". Use -Dcctest.affectedOnly=false to run all of them");
+    } else if (test == null) {
       getLog()
           .info("Now running all the unit tests. Use -Dtest=FooTest to run a single test by name");
     } else {
       getLog().info("Now running tests matching: " + test);
     }
 
+    if (ccTestRunner == TestRunner.warm && DEFAULT_TEST_GOALS.equals(ccTestGoals.trim())) {
+      String unsupported =
+          warmRunnerUnsupported(project.getArtifacts(), project.getPlugin(SUREFIRE_PLUGIN_KEY));
+      if (unsupported == null) {
+        runWarm(affectedTests != null ? affectedTests : findTestClasses(testOutputDir, test));
+        return;
+      }
+      getLog().info(unsupported + ", running the tests with Maven");
+    }
+
     final InvocationRequest request = new DefaultInvocationRequest();
     request.setLocalRepositoryDirectory(localRepositoryPath);
     request.setBatchMode(true);
@@ -102,7 +188,11 @@ public class ScalaContinuousTestMojo extends ScalaContinuousCompileMojo {
     request.setGoals(getMavenGoals());
     request.setOffline(false);
 
-    if (test != null) {
+    if (affectedTests != null) {
+      Properties properties = new Properties();
+      properties.put("test", String.join(",", affectedTests));
+      request.setProperties(properties);
+    } else if (test != null) {
       Properties properties = new Properties();
       properties.put("test", test);
       request.setProperties(properties);
@@ -124,6 +214,127 @@ public class ScalaContinuousTestMojo extends ScalaContinuousCompileMojo {
     }
   }
 
+  /**
+   * Returns why the warm runner can not run the tests like surefire would, or null when it can: it
+   * runs only JUnit 4 tests, without the JUnit Platform (Jupiter, Vintage, ...) surefire would
+   * select instead, and ignores the configuration of surefire.
+   */
+  static String warmRunnerUnsupported(Collection<Artifact> testArtifacts, Plugin surefire) {
+    boolean junit4 = false;
+    for (Artifact artifact : testArtifacts) {
+      if (artifact.getGroupId().startsWith("org.junit.")) {
+        return "JUnit Platform found in the test dependencies (" + artifact.getId() + ")";
+      }
+      junit4 |= "junit".equals(artifact.getGroupId()) && "junit".equals(artifact.getArtifactId());
+    }
+    if (!junit4) {
+      return "JUnit 4 not found in the test dependencies";
+    }
+    if (surefire != null
+        && (surefire.getConfiguration() != null
+            || surefire.getExecutions().stream().anyMatch(e -> e.getConfiguration() != null))) {
+      return "maven-surefire-plugin configured by the project";
+    }
+    return null;
+  }
+
+  /**
+   * Returns the classes of the test compilation affected by the last cycle, or null when all the
+   * tests have to run.
+   */
+  private Set<String> findAffectedClasses() {
+    if (!ccTestAffectedOnly || cycles <= 1 || recompileMode != RecompileMode.incremental) {
+      return null;
+    }
+    return AffectedTests.of(analysisCacheFile, testAnalysisCacheFile, cycleStartedAt).orElse(null);
+  }
+
+  private void runWarm(List<String> testClasses) throws Exception {
+    if (testClasses.isEmpty()) {
+      getLog().info("No test to run");
+      return;
+    }
+    List<String> jvmArgs = new ArrayList<>();
+    if (ccTestJvmArgs != null) {
+      jvmArgs.addAll(Arrays.asList(ccTestJvmArgs));
+    }
+    jvmArgs.add("-Dbasedir=" + project.getBasedir().getAbsolutePath());
+    TestServer.Result result =
+        TestServers.run(
+            project.getTestClasspathElements(),
+            testClasses,
+            jvmArgs.toArray(new String[0]),
+            JavaLocator.findExecutableFromToolchain(getToolchain()),
+            project.getBasedir(),
+            getLog());
+    if (result.run < 0) {
+      getLog().error("Failed to run the tests:\n" + result.report);
+    } else {
+      getLog().info(result.report.trim());
+      String summary =
+          String.format(
+              "Tests run: %d, Failures: %d, Skipped: %d",
+              result.run, result.failures, result.ignored);
+      if (result.failures > 0) {
+        getLog().error(summary);
+      } else {
+        getLog().info(summary);
+      }
+    }
+  }
+
+  /**
+   * Finds the classes of the directory whose simple name matches the default includes of surefire,
+   * or the patterns of the test parameter (separated by commas, * being a wildcard, matching the
+   * simple name, or the qualified name if the pattern has a package). The methods of a pattern
+   * (after #) are ignored, all the methods of the classes being run. Nested classes are excluded.
+   */
+  static List<String> findTestClasses(File directory, String test) throws IOException {
+    List<Pattern> includes = DEFAULT_TEST_INCLUDES;
+    boolean qualified = false;
+    if (StringUtils.isNotEmpty(test)) {
+      includes = new ArrayList<>();
+      for (String pattern : StringUtils.split(test, ",")) {
+        pattern = pattern.trim();
+        int methods = pattern.indexOf('#');
+        if (methods >= 0) {
+          pattern = pattern.substring(0, methods);
+        }
+        if (pattern.endsWith(".class") || pattern.endsWith(".java")) {
+          pattern = pattern.substring(0, pattern.lastIndexOf('.'));
+        }
+        pattern = pattern.replace('/', '.');
+        qualified |= pattern.indexOf('.') >= 0;
+        includes.add(Pattern.compile(Pattern.quote(pattern).replace("*", "\\E.*\\Q")));
+      }
+    }
+    if (!directory.isDirectory()) {
+      return new ArrayList<>();
+    }
+    Path root = directory.toPath();
+    boolean matchQualified = qualified;
+    List<Pattern> patterns = includes;
+    try (Stream<Path> files = Files.walk(root)) {
+      return files
+          .map(file -> root.relativize(file).toString())
+          .filter(file -> file.endsWith(".class") && file.indexOf('$') < 0)
+          .map(
+              file ->
+                  file.substring(0, file.length() - ".class".length())
+                      .replace(File.separatorChar, '.'))
+          .filter(
+              className -> {
+                String name =
+                    matchQualified
+                        ? className
+                        : className.substring(className.lastIndexOf('.') + 1);
+                return patterns.stream().anyMatch(pattern -> pattern.matcher(name).matches());
+              })
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
   private List<String> getMavenGoals() {
     getLog().debug("Running tests with goal(s): " + ccTestGoals);
     return Arrays.asList(StringUtils.split(ccTestGoals, " "));
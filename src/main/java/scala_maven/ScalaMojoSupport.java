@@ -239,11 +239,7 @@ public abstract class ScalaMojoSupport extends AbstractMojo {
             String.format(
                 "Scala library detected %s doesn't match scala.compat.version : %s",
                 scalaVersion, requiredScalaVersion);
-        if (failOnMultipleScalaVersions) {
-          getLog().error(msg);
-          throw new MojoFailureException(msg);
-        }
-        getLog().warn(msg);
+        failOrWarnOnScalaVersions(msg);
       }
       scalaContext =
           StringUtils.isNotEmpty(scalaHome)
@@ -276,6 +272,22 @@ public abstract class ScalaMojoSupport extends AbstractMojo {
     }
   }
 
+  /**
+   * Adds jars created by {@link MavenArtifactResolver#createJar} to the classpath, resolved in a
+   * batch: with their dependencies in a single dependency collection, else in parallel.
+   */
+  protected void addToClasspath(
+      Collection<Artifact> jars, Set<File> classpath, boolean addDependencies) {
+    if (jars.isEmpty()) {
+      return;
+    }
+    MavenArtifactResolver mar = findMavenArtifactResolver();
+    Set<Artifact> resolved = addDependencies ? mar.getJarsAndDependencies(jars) : mar.getJars(jars);
+    for (Artifact a : resolved) {
+      classpath.add(a.getFile());
+    }
+  }
+
   void addCompilerToClasspath(Set<File> classpath) throws Exception {
     Context sc = findScalaContext();
     for (Artifact dep : sc.findCompilerAndDependencies()) {
@@ -308,6 +320,9 @@ public abstract class ScalaMojoSupport extends AbstractMojo {
       }
       checkScalaVersion();
       doExecute();
+      if (mavenArtifactResolver != null && getLog().isDebugEnabled()) {
+        getLog().debug(mavenArtifactResolver.cacheStatistics());
+      }
     } catch (MojoExecutionException exc) {
       throw exc;
     } catch (MojoFailureException | RuntimeException exc) {
@@ -378,10 +393,19 @@ public abstract class ScalaMojoSupport extends AbstractMojo {
     return new VersionNumber(detectedScalaVersion);
   }
 
-  // TODO refactor to do only one scan of dependencies to find version
   private String findVersionFromDependencies(String groupId, Pattern artifactId) {
+    return findVersionFromDependencies(project, getDependencies(), groupId, artifactId);
+  }
+
+  /**
+   * Finds the highest version of an artifact in the dependencies of the project, or else in its
+   * declared and managed dependencies (eg before the dependencies of the project are resolved).
+   */
+  // TODO refactor to do only one scan of dependencies to find version
+  static String findVersionFromDependencies(
+      MavenProject project, List<Dependency> dependencies, String groupId, Pattern artifactId) {
     VersionNumber version = new VersionNumber("0.0.0");
-    for (Dependency dep : getDependencies()) {
+    for (Dependency dep : dependencies) {
       if (groupId.equals(dep.getGroupId()) && artifactId.matcher(dep.getArtifactId()).find()) {
         version = version.max(new VersionNumber(dep.getVersion()));
       }
@@ -432,17 +456,23 @@ public abstract class ScalaMojoSupport extends AbstractMojo {
           String.format(
               "Scala library detected %s doesn't match scala.compat.version : %s",
               sv, requiredScalaVersion);
-      if (failOnMultipleScalaVersions) {
-        getLog().error(msg);
-        throw new MojoFailureException(msg);
-      }
-      getLog().warn(msg);
+      failOrWarnOnScalaVersions(msg);
+    }
+    Set<Artifact> artifacts = project.getArtifacts();
+    if (artifacts.isEmpty()) {
+      // the dependencies are not resolved for the mojo
+      ProjectBuildingRequest request =
+          new DefaultProjectBuildingRequest(session.getProjectBuildingRequest());
+      request.setProject(project);
+      checkArtifactForScalaVersion(
+          findScalaContext(), dependencyGraphBuilder.buildDependencyGraph(request, null));
+      return;
+    }
+    ScalaVersionCheck check = ScalaVersionCheck.of(session, project, findScalaContext(), artifacts);
+    if (check.isFailed()) {
+      check.logScalaDependents(getLog());
+      failOrWarnOnScalaVersions("Multiple versions of scala libraries detected!");
     }
-    ProjectBuildingRequest request =
-        new DefaultProjectBuildingRequest(session.getProjectBuildingRequest());
-    request.setProject(project);
-    checkArtifactForScalaVersion(
-        findScalaContext(), dependencyGraphBuilder.buildDependencyGraph(request, null));
   }
 
   /** Visits a node (and all dependencies) to see if it contains duplicate scala versions */
@@ -464,12 +494,19 @@ public abstract class ScalaMojoSupport extends AbstractMojo {
 
     if (visitor.isFailed()) {
       visitor.logScalaDependents();
-      if (failOnMultipleScalaVersions) {
-        getLog().error("Multiple versions of scala libraries detected!");
-        throw new MojoFailureException("Multiple versions of scala libraries detected!");
-      }
-      getLog().warn("Multiple versions of scala libraries detected!");
+      failOrWarnOnScalaVersions("Multiple versions of scala libraries detected!");
+    }
+  }
+
+  /**
+   * Fails with the message if failOnMultipleScalaVersions is set, logs it as a warning otherwise.
+   */
+  private void failOrWarnOnScalaVersions(String msg) throws MojoFailureException {
+    if (failOnMultipleScalaVersions) {
+      getLog().error(msg);
+      throw new MojoFailureException(msg);
     }
+    getLog().warn(msg);
   }
 
   /**
@@ -582,10 +619,12 @@ public abstract class ScalaMojoSupport extends AbstractMojo {
     addLibraryToClasspath(classpath);
     addCompilerToClasspath(classpath);
     if (dependencies != null) {
+      MavenArtifactResolver mar = findMavenArtifactResolver();
+      List<Artifact> jars = new ArrayList<>();
       for (BasicArtifact artifact : dependencies) {
-        addToClasspath(
-            artifact.groupId, artifact.artifactId, artifact.version, "", classpath, true);
+        jars.add(mar.createJar(artifact.groupId, artifact.artifactId, artifact.version, ""));
       }
+      addToClasspath(jars, classpath, true);
     }
     return FileUtils.toMultiPath(classpath);
   }
@@ -730,20 +769,17 @@ public abstract class ScalaMojoSupport extends AbstractMojo {
       Set<File> ignoreClasspath = new TreeSet<>();
       addCompilerToClasspath(ignoreClasspath);
       addLibraryToClasspath(ignoreClasspath);
+      MavenArtifactResolver mar = findMavenArtifactResolver();
+      List<Artifact> jars = new ArrayList<>();
       for (BasicArtifact artifact : compilerPlugins) {
         getLog().info("compiler plugin: " + artifact.toString());
         // TODO - Ensure proper scala version for plugins
-        Set<File> pluginClassPath = new TreeSet<>();
-        addToClasspath(
-            artifact.groupId,
-            artifact.artifactId,
-            artifact.version,
-            artifact.classifier,
-            pluginClassPath,
-            false);
-        pluginClassPath.removeAll(ignoreClasspath);
-        plugins.addAll(pluginClassPath);
+        jars.add(
+            mar.createJar(
+                artifact.groupId, artifact.artifactId, artifact.version, artifact.classifier));
       }
+      addToClasspath(jars, plugins, false);
+      plugins.removeAll(ignoreClasspath);
     }
     return plugins;
   }
@@ -0,0 +1,66 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package scala_maven;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.repository.RepositorySystem;
+
+/**
+ * Resolve and compile, in parallel, the compiler bridges of all the Scala versions used by the
+ * modules of the reactor, before they are compiled (eg as a first step of a cold CI build: {@code
+ * mvn scala:prepare-bridges install}). The bridges already installed are reused.
+ */
+@Mojo(name = "prepare-bridges", aggregator = true, threadSafe = true)
+public class ScalaPrepareBridgesMojo extends AbstractMojo {
+
+  /** The Maven Session Object */
+  @Parameter(property = "session", required = true, readonly = true)
+  private MavenSession session;
+
+  /** Used to look up Artifacts in the remote repository. */
+  @Component private RepositorySystem factory;
+
+  /**
+   * Location of the incremental compile will install compiled compiler bridge jars. Default is
+   * sbt's "~/.sbt/1.0/zinc/org.scala-sbt".
+   */
+  @Parameter(property = "secondaryCacheDir")
+  private File secondaryCacheDir;
+
+  @Override
+  public void execute() throws MojoExecutionException {
+    Set<CompilerBridges.ScalaSetup> setups =
+        CompilerBridges.scalaSetupsOf(session.getProjects(), session.getUserProperties());
+    if (setups.isEmpty()) {
+      getLog().info("No Scala version found in the reactor");
+      return;
+    }
+    getLog().info("Preparing compiler bridges for Scala " + setups);
+    Map<CompilerBridges.ScalaSetup, Future<File>> bridges =
+        CompilerBridges.prepare(
+            setups, secondaryCacheDir, new MavenArtifactResolver(factory, session), getLog());
+    for (Map.Entry<CompilerBridges.ScalaSetup, Future<File>> bridge : bridges.entrySet()) {
+      try {
+        bridge.getValue().get();
+      } catch (ExecutionException e) {
+        throw new MojoExecutionException(
+            "failed to prepare the compiler bridge of Scala " + bridge.getKey(), e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new MojoExecutionException("interrupted", e);
+      }
+    }
+  }
+}
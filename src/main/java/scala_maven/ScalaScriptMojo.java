@@ -292,10 +292,13 @@ public class ScalaScriptMojo extends ScalaMojoSupport {
     Set<String> excludes =
         new TreeSet<>(Arrays.asList(StringUtils.split(excludeScopes.toLowerCase(), ",")));
 
+    // resolved together, in a single dependency collection
+    MavenArtifactResolver mar = findMavenArtifactResolver();
+    List<Artifact> artifacts = new ArrayList<>();
     for (Artifact a : project.getArtifacts()) {
       if (includes.contains(a.getScope().toLowerCase()) && !excludes.contains(a.getScope())) {
-        addToClasspath(
-            a.getGroupId(), a.getArtifactId(), a.getVersion(), a.getClassifier(), classpath, true);
+        artifacts.add(
+            mar.createJar(a.getGroupId(), a.getArtifactId(), a.getVersion(), a.getClassifier()));
       }
     }
 
@@ -304,28 +307,20 @@ public class ScalaScriptMojo extends ScalaMojoSupport {
       for (Plugin p : project.getBuildPlugins()) {
         if ("scala-maven-plugin".equals(p.getArtifactId())) {
           for (Dependency d : p.getDependencies()) {
-            addToClasspath(
-                d.getGroupId(),
-                d.getArtifactId(),
-                d.getVersion(),
-                d.getClassifier(),
-                classpath,
-                true);
+            artifacts.add(
+                mar.createJar(
+                    d.getGroupId(), d.getArtifactId(), d.getVersion(), d.getClassifier()));
           }
         }
       }
       for (Artifact a : project.getPluginArtifacts()) {
         if ("scala-maven-plugin".equals(a.getArtifactId())) {
-          addToClasspath(
-              a.getGroupId(),
-              a.getArtifactId(),
-              a.getVersion(),
-              a.getClassifier(),
-              classpath,
-              true);
+          artifacts.add(
+              mar.createJar(a.getGroupId(), a.getArtifactId(), a.getVersion(), a.getClassifier()));
         }
       }
     }
+    addToClasspath(artifacts, classpath, true);
 
     if (addToClasspath != null) {
       for (String s : StringUtils.split(addToClasspath, ",")) {
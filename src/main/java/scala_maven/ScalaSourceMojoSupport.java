@@ -6,14 +6,14 @@ package scala_maven;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import org.apache.maven.artifact.Artifact;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.codehaus.plexus.util.DirectoryScanner;
 import util.FileUtils;
+import util.SourceIndex;
 
 /**
  * @author david.bernard
@@ -94,35 +94,12 @@ public abstract class ScalaSourceMojoSupport extends ScalaMojoSupport {
 
   /** Finds all source files in a set of directories with a given extension. */
   List<File> findSourceWithFilters(List<File> sourceRootDirs) throws Exception {
-    List<File> sourceFiles = new ArrayList<>();
-
     initFilters();
 
-    // TODO - Since we're making files anyway, perhaps we should just test
-    // for existence here...
-    for (File dir : sourceRootDirs) {
-      String[] tmpFiles =
-          findFiles(dir, includes.toArray(new String[] {}), excludes.toArray(new String[] {}));
-      for (String tmpLocalFile : tmpFiles) {
-        File tmpAbsFile = FileUtils.fileOf(new File(dir, tmpLocalFile), useCanonicalPath);
-        sourceFiles.add(tmpAbsFile);
-      }
-    }
     // scalac is sensitive to scala file order, file system can't guarantee file
     // order => unreproducible build error across platforms
-    // sort files by path (OS dependent) to guarantee reproducible command line.
-    Collections.sort(sourceFiles);
-    return sourceFiles;
-  }
-
-  private static String[] findFiles(File dir, String[] includes, String[] excludes) {
-    DirectoryScanner scanner = new DirectoryScanner();
-    scanner.setBasedir(dir);
-    scanner.setIncludes(includes);
-    scanner.setExcludes(excludes);
-    scanner.addDefaultExcludes();
-    scanner.scan();
-    return scanner.getIncludedFiles();
+    // files are sorted by path (OS dependent) to guarantee reproducible command line.
+    return SourceIndex.find(sourceRootDirs, includes, excludes, useCanonicalPath);
   }
 
   /** This limits the source directories to only those that exist for real. */
@@ -142,15 +119,17 @@ public abstract class ScalaSourceMojoSupport extends ScalaMojoSupport {
 
   protected void addAdditionalDependencies(Set<File> back) throws Exception {
     if (additionalDependencies != null) {
+      MavenArtifactResolver mar = findMavenArtifactResolver();
+      List<Artifact> jars = new ArrayList<>();
       for (Dependency dependency : additionalDependencies) {
-        addToClasspath(
-            dependency.getGroupId(),
-            dependency.getArtifactId(),
-            dependency.getVersion(),
-            dependency.getClassifier(),
-            back,
-            false);
+        jars.add(
+            mar.createJar(
+                dependency.getGroupId(),
+                dependency.getArtifactId(),
+                dependency.getVersion(),
+                dependency.getClassifier()));
       }
+      addToClasspath(jars, back, false);
     }
   }
 }
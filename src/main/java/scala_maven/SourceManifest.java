@@ -0,0 +1,278 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package scala_maven;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * State of the last successful compilation of all the sources (recompileMode=all): the size, last
+ * modification time and hash of each source, a hash of the setup (options and classpath), and the
+ * class files written by the compiler. Sources are compared by content, so deleted sources, sources
+ * restored with an old modification time, and clock skews are detected; and the class files that
+ * the compiler didn't write again (eg the ones of deleted sources) can be deleted.
+ */
+final class SourceManifest {
+
+  private static final String HEADER = "scala-maven-plugin source manifest v1";
+
+  /**
+   * Stamps of files modified less than this delay before the manifest was written are not trusted:
+   * a second modification in the same timestamp tick, keeping the same size, would go unnoticed.
+   */
+  private static final long RACY_DELAY_MILLIS = 2000;
+
+  private final String setup;
+  private final Map<String, Stamp> sources;
+  private final Set<String> products;
+  private final long writtenAt;
+
+  private SourceManifest(
+      String setup, Map<String, Stamp> sources, Set<String> products, long writtenAt) {
+    this.setup = setup;
+    this.sources = sources;
+    this.products = products;
+    this.writtenAt = writtenAt;
+  }
+
+  /** Returns the manifest stored in {@code file}, null if missing or unreadable. */
+  static SourceManifest read(File file) {
+    if (!file.isFile()) {
+      return null;
+    }
+    try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      if (!HEADER.equals(in.readLine())) {
+        return null;
+      }
+      long writtenAt = Long.parseLong(in.readLine());
+      String setup = in.readLine();
+      int sourceCount = Integer.parseInt(in.readLine());
+      Map<String, Stamp> sources = new TreeMap<>();
+      for (int i = 0; i < sourceCount; i++) {
+        long size = Long.parseLong(in.readLine());
+        long lastModified = Long.parseLong(in.readLine());
+        String hash = in.readLine();
+        sources.put(in.readLine(), new Stamp(size, lastModified, hash));
+      }
+      int productCount = Integer.parseInt(in.readLine());
+      Set<String> products = new TreeSet<>();
+      for (int i = 0; i < productCount; i++) {
+        products.add(in.readLine());
+      }
+      return new SourceManifest(setup, sources, products, writtenAt);
+    } catch (IOException | RuntimeException e) {
+      // corrupted, compile again
+      return null;
+    }
+  }
+
+  /**
+   * Stamps the sources, reusing the hashes of {@code previous} for the files with the same size and
+   * last modification time.
+   */
+  static SourceManifest of(String setup, Collection<File> sourceFiles, SourceManifest previous)
+      throws IOException {
+    Map<String, Stamp> sources = new TreeMap<>();
+    for (File file : sourceFiles) {
+      String path = file.getPath();
+      long size = file.length();
+      long lastModified = file.lastModified();
+      Stamp stamp = previous == null ? null : previous.sources.get(path);
+      if (stamp == null
+          || stamp.size != size
+          || stamp.lastModified != lastModified
+          || previous.writtenAt - lastModified < RACY_DELAY_MILLIS) {
+        stamp = new Stamp(size, lastModified, hash(file));
+      }
+      sources.put(path, stamp);
+    }
+    return new SourceManifest(setup, sources, Collections.emptySet(), 0L);
+  }
+
+  /** Hashes the options and the classpath (path, size and last modification of each element). */
+  static String setupOf(Collection<String> options, Collection<File> classpath) throws IOException {
+    MessageDigest digest = newDigest();
+    for (String option : options) {
+      update(digest, "option " + option);
+    }
+    for (File element : classpath) {
+      update(digest, "classpath " + element.getPath() + " " + stampOf(element.toPath()));
+    }
+    return toHex(digest.digest());
+  }
+
+  /** Returns true if the sources and the setup are the same as the ones of {@code other}. */
+  boolean hasSameInputs(SourceManifest other) {
+    if (!setup.equals(other.setup) || !sources.keySet().equals(other.sources.keySet())) {
+      return false;
+    }
+    for (Map.Entry<String, Stamp> entry : sources.entrySet()) {
+      Stamp stamp = other.sources.get(entry.getKey());
+      if (stamp.size != entry.getValue().size || !stamp.hash.equals(entry.getValue().hash)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  Set<String> products() {
+    return products;
+  }
+
+  SourceManifest withProducts(Set<String> newProducts) {
+    return new SourceManifest(setup, sources, new TreeSet<>(newProducts), writtenAt);
+  }
+
+  void write(File file) throws IOException {
+    file.getParentFile().mkdirs();
+    Path tmp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+    try {
+      try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+        writeLine(out, HEADER);
+        writeLine(out, String.valueOf(System.currentTimeMillis()));
+        writeLine(out, setup);
+        writeLine(out, String.valueOf(sources.size()));
+        for (Map.Entry<String, Stamp> entry : sources.entrySet()) {
+          Stamp stamp = entry.getValue();
+          writeLine(out, String.valueOf(stamp.size));
+          writeLine(out, String.valueOf(stamp.lastModified));
+          writeLine(out, stamp.hash);
+          writeLine(out, entry.getKey());
+        }
+        writeLine(out, String.valueOf(products.size()));
+        for (String product : products) {
+          writeLine(out, product);
+        }
+      }
+      Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Returns the class files of {@code outputDir} (relative paths) with their last modification
+   * time, taken before a compilation to find the class files it writes.
+   */
+  static Map<String, Long> classFilesOf(File outputDir) throws IOException {
+    Map<String, Long> classFiles = new HashMap<>();
+    if (!outputDir.isDirectory()) {
+      return classFiles;
+    }
+    Path root = outputDir.toPath();
+    Files.walkFileTree(
+        root,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (file.getFileName().toString().endsWith(".class")) {
+              classFiles.put(root.relativize(file).toString(), attrs.lastModifiedTime().toMillis());
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    return classFiles;
+  }
+
+  /**
+   * Returns the class files written by a compilation started at {@code since}: the ones of {@code
+   * outputDir} that are not in the snapshot {@code before} taken by {@link #classFilesOf}, or that
+   * were modified since. Resources and the other files are never products.
+   */
+  static Set<String> productsOf(File outputDir, Map<String, Long> before, long since)
+      throws IOException {
+    // a class file written again in the same timestamp tick keeps its modification time: the ones
+    // modified since the start of the compilation (rounded down to the second, and one more for the
+    // file systems with a coarse precision) are products too, keeping a stale class is safer than
+    // deleting a fresh one
+    long threshold = (since / 1000 - 1) * 1000;
+    Set<String> products = new TreeSet<>();
+    for (Map.Entry<String, Long> entry : classFilesOf(outputDir).entrySet()) {
+      Long previous = before.get(entry.getKey());
+      if (previous == null
+          || previous.longValue() != entry.getValue()
+          || entry.getValue() >= threshold) {
+        products.add(entry.getKey());
+      }
+    }
+    return products;
+  }
+
+  private static String stampOf(Path path) throws IOException {
+    if (!Files.exists(path)) {
+      return "missing";
+    }
+    if (!Files.isDirectory(path)) {
+      return Files.size(path) + " " + Files.getLastModifiedTime(path).toMillis();
+    }
+    long[] stamp = new long[3]; // count, total size, newest modification
+    Files.walkFileTree(
+        path,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            stamp[0]++;
+            stamp[1] += attrs.size();
+            stamp[2] = Math.max(stamp[2], attrs.lastModifiedTime().toMillis());
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    return stamp[0] + " " + stamp[1] + " " + stamp[2];
+  }
+
+  private static String hash(File file) throws IOException {
+    MessageDigest digest = newDigest();
+    byte[] buffer = new byte[8192];
+    try (InputStream in = new FileInputStream(file)) {
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        digest.update(buffer, 0, n);
+      }
+    }
+    return toHex(digest.digest());
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void update(MessageDigest digest, String line) {
+    digest.update((line + '\n').getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return hex.toString();
+  }
+
+  private static void writeLine(Writer out, String line) throws IOException {
+    out.write(line);
+    out.write('\n');
+  }
+
+  private static final class Stamp {
+    final long size;
+    final long lastModified;
+    final String hash;
+
+    Stamp(long size, long lastModified, String hash) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.hash = hash;
+    }
+  }
+}
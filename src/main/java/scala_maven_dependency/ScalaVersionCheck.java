@@ -0,0 +1,126 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package scala_maven_dependency;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import scala_maven.VersionNumber;
+
+/**
+ * Ensures that all scala versions of the resolved artifacts of a project match the given version,
+ * in a single pass over the artifacts: they are mediated by Maven like the nodes of the dependency
+ * graph, and their dependency trail tells which artifact requires them. The result is shared in the
+ * session by the mojos of the project resolving the same artifacts: compile, doc and doc-jar for
+ * the compile scope, testCompile, cc, cctest, run, ... for the test scope.
+ */
+public final class ScalaVersionCheck {
+
+  private static final Map<MavenExecutionRequest, Map<String, ScalaVersionCheck>> SESSIONS =
+      new WeakHashMap<>();
+
+  private final VersionNumber expected;
+  private final boolean failed;
+  private final List<String> scalaDependentArtifactStrings;
+  private final AtomicBoolean reported = new AtomicBoolean();
+
+  private ScalaVersionCheck(
+      VersionNumber expected, boolean failed, List<String> scalaDependentArtifactStrings) {
+    this.expected = expected;
+    this.failed = failed;
+    this.scalaDependentArtifactStrings = scalaDependentArtifactStrings;
+  }
+
+  /** Returns the check of the artifacts of the project, computed once per session. */
+  public static ScalaVersionCheck of(
+      MavenSession session, MavenProject project, Context scalaContext, Set<Artifact> artifacts)
+      throws Exception {
+    return of(
+        session == null ? null : session.getRequest(), project.getId(), scalaContext, artifacts);
+  }
+
+  /**
+   * Returns the check of the artifacts of the project, computed once per request of a session. The
+   * check is keyed by the ids of the artifacts themselves: two sets of artifacts are only given the
+   * same check if they are the same.
+   */
+  static ScalaVersionCheck of(
+      MavenExecutionRequest request,
+      String projectId,
+      Context scalaContext,
+      Collection<Artifact> artifacts)
+      throws Exception {
+    if (request == null) {
+      return of(scalaContext, artifacts);
+    }
+    List<String> ids = new ArrayList<>(artifacts.size());
+    for (Artifact artifact : artifacts) {
+      ids.add(artifact.getId());
+    }
+    Collections.sort(ids);
+    String key = projectId + " " + scalaContext.versionCompat() + " " + String.join(",", ids);
+
+    Map<String, ScalaVersionCheck> checks;
+    synchronized (SESSIONS) {
+      checks = SESSIONS.computeIfAbsent(request, k -> new ConcurrentHashMap<>());
+    }
+    ScalaVersionCheck check = checks.get(key);
+    if (check == null) {
+      check = of(scalaContext, artifacts);
+      checks.put(key, check);
+    }
+    return check;
+  }
+
+  static ScalaVersionCheck of(Context scalaContext, Collection<Artifact> artifacts)
+      throws Exception {
+    boolean failed = false;
+    List<String> scalaDependentArtifactStrings = new ArrayList<>();
+    for (Artifact artifact : artifacts) {
+      if (scalaContext.hasInDistro(artifact) && artifact.getVersion() != null) {
+        VersionNumber originalVersion = new VersionNumber(artifact.getVersion());
+        if (scalaContext.versionCompat().compareTo(originalVersion) != 0) {
+          failed = true;
+        }
+        // the trail goes from the project to the artifact, track which artifact requires it
+        List<String> trail = artifact.getDependencyTrail();
+        if (trail != null && trail.size() > 1) {
+          scalaDependentArtifactStrings.add(
+              " "
+                  + makeArtifactNameString(trail.get(trail.size() - 2))
+                  + " requires scala version: "
+                  + originalVersion);
+        }
+      }
+    }
+    return new ScalaVersionCheck(scalaContext.version(), failed, scalaDependentArtifactStrings);
+  }
+
+  /** groupId:artifactId:version of an artifact id (groupId:artifactId:type[:classifier]:version) */
+  private static String makeArtifactNameString(String id) {
+    String[] parts = id.split(":");
+    return parts.length < 3 ? id : parts[0] + ":" + parts[1] + ":" + parts[parts.length - 1];
+  }
+
+  public boolean isFailed() {
+    return failed;
+  }
+
+  /** Logs which artifacts require which scala version, the first time only. */
+  public void logScalaDependents(Log log) {
+    if (!reported.compareAndSet(false, true)) {
+      return;
+    }
+    log.warn(" Expected all dependencies to require Scala version: " + expected);
+    for (String dependString : scalaDependentArtifactStrings) {
+      log.warn(dependString);
+    }
+  }
+}
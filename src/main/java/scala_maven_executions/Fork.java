@@ -79,13 +79,7 @@ public final class Fork {
   }
 
   public void run(OutputStream os) throws Exception {
-    File booterJar = createBooterJar(classpath, ForkMain.class.getName(), args);
-
-    CommandLine command = new CommandLine(toWindowsShortName(javaExecutable.getCanonicalPath()));
-    command.addArguments(jvmArgs, false);
-    command.addArgument("-jar");
-    command.addArgument(booterJar.getCanonicalPath());
-    command.addArgument(mainClassName);
+    CommandLine command = buildCommandLine();
 
     Executor exec = new DefaultExecutor();
     exec.setStreamHandler(new PumpStreamHandler(os));
@@ -96,6 +90,45 @@ public final class Fork {
     }
   }
 
+  /**
+   * Start the forked process without waiting for its termination, eg for a long-lived server. The
+   * caller is in charge of its standard streams (stderr is redirected to stdout).
+   */
+  public Process start() throws IOException {
+    return start(true);
+  }
+
+  /**
+   * Start the forked process without waiting for its termination. The caller is in charge of its
+   * standard streams, stderr being a separate stream unless {@code redirectErrorStream}, eg when
+   * stdout carries data rather than text.
+   */
+  public Process start(boolean redirectErrorStream) throws IOException {
+    return start(redirectErrorStream, null);
+  }
+
+  /**
+   * Start the forked process in the working directory (the one of the Maven process if null)
+   * without waiting for its termination, as {@link #start(boolean)}.
+   */
+  public Process start(boolean redirectErrorStream, File workingDirectory) throws IOException {
+    return new ProcessBuilder(buildCommandLine().toStrings())
+        .redirectErrorStream(redirectErrorStream)
+        .directory(workingDirectory)
+        .start();
+  }
+
+  private CommandLine buildCommandLine() throws IOException {
+    File booterJar = createBooterJar(classpath, ForkMain.class.getName(), args);
+
+    CommandLine command = new CommandLine(toWindowsShortName(javaExecutable.getCanonicalPath()));
+    command.addArguments(jvmArgs, false);
+    command.addArgument("-jar");
+    command.addArgument(booterJar.getCanonicalPath());
+    command.addArgument(mainClassName);
+    return command;
+  }
+
   /**
    * Create a jar with just a manifest containing a Main-Class entry and a Class-Path entry for all
    * classpath elements.
@@ -64,12 +64,12 @@ public class JavaMainCallerByFork extends JavaMainCallerSupport {
       exec.setStreamHandler(
           new PumpStreamHandler(
               new LogOutputStream() {
-                private LevelState _previous = new LevelState();
+                private final LevelState _previous = new LevelState();
 
                 @Override
                 protected void processLine(String line, int level) {
                   try {
-                    _previous = LogProcessorUtils.levelStateOf(line, _previous);
+                    LogProcessorUtils.updateLevelState(line, _previous);
                     switch (_previous.level) {
                       case ERROR:
                         mavenLogger.error(line);
@@ -4,8 +4,11 @@
  */
 package scala_maven_executions;
 
-import java.util.regex.Pattern;
-
+/**
+ * Level of the lines of the output of a compiler, called for every line: the classification is done
+ * in a single pass over the line, case-insensitively (on ASCII letters, as all the markers are),
+ * without lower-casing the line, regular expressions or any other allocation.
+ */
 public class LogProcessorUtils {
 
   public enum Level {
@@ -19,59 +22,127 @@ public class LogProcessorUtils {
     public String untilContains = null;
   }
 
-  /** Matches "warning" or "warnings" as complete words, but not filenames e.g. "Warnings.scala". */
-  private static final Pattern WARNING_WORD = Pattern.compile("\\bwarnings?\\b(?!\\.scala)");
+  private static final String CARET = "^";
+
+  private static final String WARNING = "warning";
+  private static final String ERROR = "error";
+  private static final String SCALA_EXTENSION = ".scala";
 
-  /** Matches "error" or "errors" as complete words, but not filenames e.g. "Errors.scala". */
-  private static final Pattern ERROR_WORD = Pattern.compile("\\berrors?\\b(?!\\.scala)");
+  private static final int WARNING_WORD = 1;
+  private static final int ERROR_WORD = 2;
+  private static final int SCALA_FILE = 4;
 
   public static LevelState levelStateOf(String line, LevelState previous) {
     LevelState back = new LevelState();
-    String lineLowerCase = line.toLowerCase();
-    if (isWarningLine(lineLowerCase)) {
-      back.level = Level.WARNING;
-      if (lineLowerCase.contains(".scala")) {
-        back.untilContains = "^";
+    back.level = previous.level;
+    back.untilContains = previous.untilContains;
+    updateLevelState(line, back);
+    return back;
+  }
+
+  /**
+   * Updates in place the state with the level of the line, as {@link #levelStateOf(String,
+   * LevelState)} without allocating a new state.
+   *
+   * @param line the line of output
+   * @param state the state of the previous line, updated to the state of this line
+   */
+  public static void updateLevelState(String line, LevelState state) {
+    int markers = markersOf(line);
+    if ((markers & WARNING_WORD) != 0) {
+      state.level = Level.WARNING;
+      state.untilContains = (markers & SCALA_FILE) != 0 ? CARET : null;
+    } else if ((markers & ERROR_WORD) != 0) {
+      state.level = Level.ERROR;
+      state.untilContains = (markers & SCALA_FILE) != 0 ? CARET : null;
+    } else if (state.untilContains != null) {
+      if (containsIgnoreCase(line, state.untilContains)) {
+        state.untilContains = null;
       }
-    } else if (isErrorLine(lineLowerCase)) {
-      back.level = Level.ERROR;
-      if (lineLowerCase.contains(".scala")) {
-        back.untilContains = "^";
+    } else {
+      state.level = Level.INFO;
+    }
+  }
+
+  /**
+   * Finds the markers of the line: "warning" or "warnings" and "error" or "errors" as complete
+   * words but not as filenames e.g. "Warnings.scala" (the severity markers e.g. "error:" at the
+   * start of the line or in {@code path:lineNum: error: message} are such words), and ".scala".
+   *
+   * @return the bit set of the markers found
+   */
+  private static int markersOf(String line) {
+    int markers = 0;
+    int length = line.length();
+    for (int i = 0; i < length; i++) {
+      char c = toLowerCase(line.charAt(i));
+      if (c == '.') {
+        if (regionMatches(line, i, SCALA_EXTENSION)) {
+          markers |= SCALA_FILE;
+        }
+      } else if ((c == 'w' || c == 'e') && (i == 0 || !isWordChar(line.charAt(i - 1)))) {
+        if (c == 'w' && isSeverityWord(line, i, WARNING)) {
+          markers |= WARNING_WORD;
+        } else if (c == 'e' && isSeverityWord(line, i, ERROR)) {
+          markers |= ERROR_WORD;
+        }
       }
-    } else if (previous.untilContains != null) {
-      if (!lineLowerCase.contains(previous.untilContains)) {
-        back = previous;
-      } else {
-        back.level = previous.level;
-        back.untilContains = null;
+      if ((markers & (WARNING_WORD | SCALA_FILE)) == (WARNING_WORD | SCALA_FILE)) {
+        // nothing found further can change the level
+        break;
       }
     }
-    return back;
+    return markers;
+  }
+
+  /** Checks whether the word or its plural ends at offset, and is not the name of a source. */
+  private static boolean isSeverityWord(String line, int offset, String word) {
+    if (!regionMatches(line, offset, word)) {
+      return false;
+    }
+    int end = offset + word.length();
+    if (isWordEnd(line, end) && !regionMatches(line, end, SCALA_EXTENSION)) {
+      return true;
+    }
+    return end < line.length()
+        && toLowerCase(line.charAt(end)) == 's'
+        && isWordEnd(line, end + 1)
+        && !regionMatches(line, end + 1, SCALA_EXTENSION);
   }
 
-  private static boolean isWarningLine(String line) {
-    return hasSeverityMarker(line, "warning") || WARNING_WORD.matcher(line).find();
+  private static boolean isWordEnd(String line, int index) {
+    return index == line.length() || !isWordChar(line.charAt(index));
   }
 
-  private static boolean isErrorLine(String line) {
-    return hasSeverityMarker(line, "error") || ERROR_WORD.matcher(line).find();
+  /** Same characters as a word boundary ({@code \b}) of java.util.regex before Java 19. */
+  private static boolean isWordChar(char c) {
+    return c == '_' || Character.isLetterOrDigit(c);
   }
 
-  /**
-   * Checks whether the line contains a severity marker e.g. "error:" or "warning:".
-   *
-   * <p>Matches common compiler and build-tool formats, including:
-   *
-   * <ul>
-   *   <li>{@code path:lineNum: error: message}
-   *   <li>{@code error: message} at the start of the line
-   * </ul>
-   *
-   * @param lineLowerCase the lowercase line to check
-   * @param marker the severity marker to look for e.g. "error" or "warning"
-   * @return true if the line starts with {@code marker:} or contains {@code " marker:"}
-   */
-  private static boolean hasSeverityMarker(String lineLowerCase, String marker) {
-    return lineLowerCase.startsWith(marker + ":") || lineLowerCase.contains(" " + marker + ":");
+  private static boolean containsIgnoreCase(String line, String lowerCase) {
+    for (int i = 0, last = line.length() - lowerCase.length(); i <= last; i++) {
+      if (regionMatches(line, i, lowerCase)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Checks whether the line contains the lower case text at offset, ignoring the case. */
+  private static boolean regionMatches(String line, int offset, String lowerCase) {
+    int length = lowerCase.length();
+    if (offset + length > line.length()) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (toLowerCase(line.charAt(offset + i)) != lowerCase.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static char toLowerCase(char c) {
+    return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
   }
 }
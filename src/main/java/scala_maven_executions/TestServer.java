@@ -0,0 +1,229 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package scala_maven_executions;
+
+import java.io.*;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Long-lived forked JVM running the JUnit 4 tests of a module for scala:cctest, so the JVM startup
+ * and the loading of the test dependencies are paid once instead of once per change. The jars of
+ * the test classpath are loaded by a class loader kept warm between runs, the directories (the
+ * output of the compilations) by a new child class loader for every run, so the changed classes are
+ * reloaded.
+ *
+ * <p>Each request, read from the standard input, is the jars, the directories and the names of the
+ * test classes; the {@link Result} is written to the standard output. The tests print to the
+ * standard error. The server stops when its standard input is closed (the Maven process is gone).
+ * Only the JDK is used here: the classpath of the server is the plugin jar alone, isolated from the
+ * tests.
+ */
+public final class TestServer {
+
+  private static final String JUNIT_CORE = "org.junit.runner.JUnitCore";
+  private static final String TEXT_LISTENER = "org.junit.internal.TextListener";
+  private static final String RUN_WITH = "org.junit.runner.RunWith";
+  private static final String TEST = "org.junit.Test";
+  private static final String TEST_CASE = "junit.framework.TestCase";
+
+  private TestServer() {}
+
+  /** Outcome of a run, {@link #run} being -1 when the tests could not be run. */
+  public static final class Result {
+    public final int run;
+    public final int failures;
+    public final int ignored;
+
+    /** What JUnit reports: the failures with their stack trace, and the totals. */
+    public final String report;
+
+    Result(int run, int failures, int ignored, String report) {
+      this.run = run;
+      this.failures = failures;
+      this.ignored = ignored;
+      this.report = report;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+      out.writeInt(run);
+      out.writeInt(failures);
+      out.writeInt(ignored);
+      writeString(out, report);
+      out.flush();
+    }
+
+    static Result readFrom(DataInputStream in) throws IOException {
+      return new Result(in.readInt(), in.readInt(), in.readInt(), readString(in));
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+    // the output of the tests must not mix with the results
+    System.setOut(System.err);
+    DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+
+    List<String> jars = null;
+    URLClassLoader warm = null;
+    while (true) {
+      List<String> requestJars;
+      try {
+        requestJars = readStrings(in);
+      } catch (EOFException e) {
+        return;
+      }
+      List<String> directories = readStrings(in);
+      List<String> testClasses = readStrings(in);
+      if (!requestJars.equals(jars)) {
+        // the dependencies changed, eg a module of the reactor was packaged
+        close(warm);
+        warm =
+            new URLClassLoader(toUrls(requestJars), ClassLoader.getSystemClassLoader().getParent());
+        jars = requestJars;
+      }
+      Result result;
+      try (URLClassLoader loader = new URLClassLoader(toUrls(directories), warm)) {
+        result = runTests(loader, testClasses);
+      } catch (Throwable t) {
+        StringWriter stacktrace = new StringWriter();
+        t.printStackTrace(new PrintWriter(stacktrace));
+        result = new Result(-1, 0, 0, stacktrace.toString());
+      }
+      System.err.flush();
+      result.writeTo(out);
+    }
+  }
+
+  /**
+   * Runs with JUnit 4 the test classes among the given classes: the classes with a {@link
+   * #RUN_WITH} annotation or {@link #TEST} methods, and the JUnit 3 test cases.
+   */
+  static Result runTests(ClassLoader loader, List<String> classNames) throws Exception {
+    List<Class<?>> tests = new ArrayList<>();
+    for (String className : classNames) {
+      Class<?> c = Class.forName(className, false, loader);
+      if (isTest(c, loader)) {
+        tests.add(c);
+      }
+    }
+
+    Thread thread = Thread.currentThread();
+    ClassLoader contextClassLoader = thread.getContextClassLoader();
+    thread.setContextClassLoader(loader);
+    try {
+      Class<?> junitCore = loader.loadClass(JUNIT_CORE);
+      Object core = junitCore.getConstructor().newInstance();
+      ByteArrayOutputStream report = new ByteArrayOutputStream();
+      Class<?> textListener = loader.loadClass(TEXT_LISTENER);
+      Object listener =
+          textListener
+              .getConstructor(PrintStream.class)
+              .newInstance(new PrintStream(report, true, "UTF-8"));
+      junitCore
+          .getMethod("addListener", loader.loadClass("org.junit.runner.notification.RunListener"))
+          .invoke(core, listener);
+      Object result =
+          junitCore
+              .getMethod("run", Class[].class)
+              .invoke(core, (Object) tests.toArray(new Class<?>[0]));
+      Class<?> resultClass = result.getClass();
+      return new Result(
+          (Integer) resultClass.getMethod("getRunCount").invoke(result),
+          (Integer) resultClass.getMethod("getFailureCount").invoke(result),
+          (Integer) resultClass.getMethod("getIgnoreCount").invoke(result),
+          new String(report.toByteArray(), StandardCharsets.UTF_8));
+    } finally {
+      thread.setContextClassLoader(contextClassLoader);
+    }
+  }
+
+  private static boolean isTest(Class<?> c, ClassLoader loader) {
+    if (c.isInterface()
+        || Modifier.isAbstract(c.getModifiers())
+        || !Modifier.isPublic(c.getModifiers())) {
+      return false;
+    }
+    if (hasAnnotation(c.getAnnotations(), RUN_WITH)) {
+      return true;
+    }
+    try {
+      if (loader.loadClass(TEST_CASE).isAssignableFrom(c)) {
+        return true;
+      }
+    } catch (ClassNotFoundException e) {
+      // no JUnit 3 API
+    }
+    for (Method method : c.getMethods()) {
+      if (hasAnnotation(method.getAnnotations(), TEST)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean hasAnnotation(Annotation[] annotations, String className) {
+    for (Annotation annotation : annotations) {
+      if (annotation.annotationType().getName().equals(className)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+    out.writeInt(values.size());
+    for (String value : values) {
+      writeString(out, value);
+    }
+  }
+
+  private static List<String> readStrings(DataInputStream in) throws IOException {
+    int size = in.readInt();
+    List<String> values = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      values.add(readString(in));
+    }
+    return values;
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static URL[] toUrls(List<String> paths) throws MalformedURLException {
+    URL[] urls = new URL[paths.size()];
+    for (int i = 0; i < urls.length; i++) {
+      urls[i] = new File(paths.get(i)).toURI().toURL();
+    }
+    return urls;
+  }
+
+  private static void close(URLClassLoader loader) {
+    if (loader != null) {
+      try {
+        loader.close();
+      } catch (IOException e) {
+        // life...
+      }
+    }
+  }
+}
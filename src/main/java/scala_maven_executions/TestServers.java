@@ -0,0 +1,113 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package scala_maven_executions;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Client side of the {@link TestServer}: starts one server per fork configuration (java executable,
+ * jvm arguments and working directory) and reuses it for every run of the Maven session. A server
+ * that died (eg a test called System.exit) is transparently restarted.
+ */
+public final class TestServers {
+
+  private static final Map<List<String>, Server> SERVERS = new HashMap<>();
+
+  private TestServers() {}
+
+  /**
+   * Runs the test classes, the directories of the classpath being reloaded for every run.
+   *
+   * @param classpath the test classpath
+   * @param testClasses the names of the classes to run, the ones that are not tests being ignored
+   */
+  public static synchronized TestServer.Result run(
+      List<String> classpath,
+      List<String> testClasses,
+      String[] jvmArgs,
+      File javaExec,
+      File workingDirectory,
+      Log mavenLogger)
+      throws IOException {
+    List<String> jars = new ArrayList<>();
+    List<String> directories = new ArrayList<>();
+    for (String element : classpath) {
+      (new File(element).isDirectory() ? directories : jars).add(element);
+    }
+
+    List<String> key = new ArrayList<>();
+    key.add(javaExec.getPath());
+    key.add(workingDirectory.getPath());
+    key.addAll(Arrays.asList(jvmArgs));
+    Server server = SERVERS.get(key);
+    if (server == null || !server.process.isAlive()) {
+      Fork fork =
+          new Fork(TestServer.class.getName(), pluginJar(), jvmArgs, new String[0], javaExec);
+      server = new Server(fork.start(false, workingDirectory), mavenLogger);
+      SERVERS.put(key, server);
+    }
+
+    try {
+      TestServer.writeStrings(server.out, jars);
+      TestServer.writeStrings(server.out, directories);
+      TestServer.writeStrings(server.out, testClasses);
+      server.out.flush();
+      return TestServer.Result.readFrom(server.in);
+    } catch (IOException e) {
+      server.process.destroy();
+      SERVERS.remove(key);
+      throw new IOException("test JVM exited during the run", e);
+    }
+  }
+
+  /**
+   * The classpath of the server: the jar (or directory) of the plugin classes, without its
+   * dependencies.
+   */
+  private static List<String> pluginJar() throws IOException {
+    try {
+      return Collections.singletonList(
+          new File(TestServer.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+              .getPath());
+    } catch (URISyntaxException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private static final class Server {
+    final Process process;
+    final DataOutputStream out;
+    final DataInputStream in;
+
+    Server(Process process, Log mavenLogger) {
+      this.process = process;
+      this.out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+      this.in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+
+      // the output of the tests
+      Thread drainer =
+          new Thread(
+              () -> {
+                try (BufferedReader stderr =
+                    new BufferedReader(
+                        new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+                  String line;
+                  while ((line = stderr.readLine()) != null) {
+                    mavenLogger.info(line);
+                  }
+                } catch (IOException e) {
+                  // life...
+                }
+              },
+              "test-server-output");
+      drainer.setDaemon(true);
+      drainer.start();
+    }
+  }
+}
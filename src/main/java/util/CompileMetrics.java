@@ -0,0 +1,159 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Metrics of a compilation (timings, scalac phases, numbers of sources), written as a JSON report
+ * so builds can be compared and the slow modules found. Timings of the same name add up, eg the
+ * javac runs of several invalidation cycles.
+ */
+public final class CompileMetrics {
+
+  private final Map<String, String> attributes = new LinkedHashMap<>();
+  private final Map<String, Long> timings = new LinkedHashMap<>();
+  private final Map<String, Long> phases = new LinkedHashMap<>();
+  private final Map<String, Long> counts = new LinkedHashMap<>();
+
+  /**
+   * Returns new metrics, resetting the peak heap usage of the JVM (shared by the modules of a
+   * parallel build).
+   */
+  public static CompileMetrics start() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+      }
+    }
+    return new CompileMetrics();
+  }
+
+  public synchronized void put(String name, String value) {
+    attributes.put(name, value);
+  }
+
+  public synchronized void addTime(String name, long nanos) {
+    timings.merge(name, nanos, Long::sum);
+  }
+
+  /** Adds the time spent in a scalac phase. */
+  public synchronized void addPhaseTime(String phase, long nanos) {
+    phases.merge(phase, nanos, Long::sum);
+  }
+
+  public synchronized void count(String name, long value) {
+    counts.merge(name, value, Long::sum);
+  }
+
+  /** Returns the total time of {@code name} in nanoseconds, null if not timed. */
+  public synchronized Long time(String name) {
+    return timings.get(name);
+  }
+
+  /** Returns the total time of the scalac {@code phase} in nanoseconds, null if not timed. */
+  public synchronized Long phaseTime(String phase) {
+    return phases.get(phase);
+  }
+
+  /** Returns a copy of the timings, in nanoseconds. */
+  public synchronized Map<String, Long> timings() {
+    return new LinkedHashMap<>(timings);
+  }
+
+  /** Returns a copy of the times of the scalac phases, in nanoseconds. */
+  public synchronized Map<String, Long> phaseTimes() {
+    return new LinkedHashMap<>(phases);
+  }
+
+  /** Returns a copy of the counts. */
+  public synchronized Map<String, Long> counts() {
+    return new LinkedHashMap<>(counts);
+  }
+
+  /** Writes the metrics as JSON, the timings in milliseconds and the peak heap in bytes. */
+  public void write(File file) throws IOException {
+    StringBuilder json = new StringBuilder("{\n");
+    synchronized (this) {
+      for (Map.Entry<String, String> entry : attributes.entrySet()) {
+        json.append("  ")
+            .append(quote(entry.getKey()))
+            .append(": ")
+            .append(quote(entry.getValue()))
+            .append(",\n");
+      }
+      appendMillis(json, "timings", timings);
+      appendMillis(json, "phases", phases);
+      json.append("  \"sources\": {");
+      String separator = "\n";
+      for (Map.Entry<String, Long> entry : counts.entrySet()) {
+        json.append(separator).append("    ").append(quote(entry.getKey())).append(": ");
+        json.append(entry.getValue());
+        separator = ",\n";
+      }
+      json.append(counts.isEmpty() ? "},\n" : "\n  },\n");
+    }
+    json.append("  \"peakHeapBytes\": ").append(peakHeap()).append("\n}\n");
+
+    file.getParentFile().mkdirs();
+    Path tmp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+    try {
+      try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+        out.write(json.toString());
+      }
+      Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  private static void appendMillis(StringBuilder json, String name, Map<String, Long> nanos) {
+    json.append("  ").append(quote(name)).append(": {");
+    String separator = "\n";
+    for (Map.Entry<String, Long> entry : nanos.entrySet()) {
+      json.append(separator).append("    ").append(quote(entry.getKey())).append(": ");
+      json.append(String.format(Locale.ROOT, "%.1f", entry.getValue() / 1_000_000.0));
+      separator = ",\n";
+    }
+    json.append(nanos.isEmpty() ? "},\n" : "\n  },\n");
+  }
+
+  private static long peakHeap() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    return peak;
+  }
+
+  static String quote(String value) {
+    StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        quoted.append('\\').append(c);
+      } else if (c < 0x20) {
+        quoted.append(String.format("\\u%04x", (int) c));
+      } else {
+        quoted.append(c);
+      }
+    }
+    return quoted.append('"').toString();
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package util;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Persistent cache of values computed from the content of files (eg hashes), keyed by path and
+ * invalidated when the size or the last modification time of the file changes. Only the entries
+ * used since the cache was loaded are saved, so the entries of deleted files don't pile up.
+ */
+public final class FileStampCache {
+
+  private static final int FORMAT_VERSION = 1;
+
+  /**
+   * Files modified less than this delay before being stamped are not cached: a second modification
+   * in the same timestamp tick, keeping the same size, would go unnoticed.
+   */
+  private static final long RACY_DELAY_MILLIS = 2000;
+
+  private final File file;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private volatile boolean dirty;
+
+  private FileStampCache(File file) {
+    this.file = file;
+  }
+
+  /** Loads the cache stored in {@code file}, or creates an empty one if missing or unreadable. */
+  public static FileStampCache load(File file) {
+    FileStampCache cache = new FileStampCache(file);
+    if (file.isFile()) {
+      try (DataInputStream in =
+          new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+        if (in.readInt() == FORMAT_VERSION) {
+          int size = in.readInt();
+          for (int i = 0; i < size; i++) {
+            String path = in.readUTF();
+            long length = in.readLong();
+            long lastModified = in.readLong();
+            String value = in.readUTF();
+            cache.entries.put(path, new Entry(length, lastModified, value, false));
+          }
+        }
+      } catch (IOException e) {
+        // corrupted cache, start from scratch
+        cache.entries.clear();
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Returns the value cached for {@code path} if the file didn't change, else computes and caches
+   * it. Missing files (and directories) are not cached.
+   */
+  public String get(Path path, Function<Path, String> compute) {
+    BasicFileAttributes attrs;
+    try {
+      attrs = Files.readAttributes(path, BasicFileAttributes.class);
+    } catch (IOException e) {
+      return compute.apply(path);
+    }
+    if (!attrs.isRegularFile()) {
+      return compute.apply(path);
+    }
+
+    String key = path.toString();
+    long length = attrs.size();
+    long lastModified = attrs.lastModifiedTime().toMillis();
+    Entry entry = entries.get(key);
+    if (entry != null && entry.length == length && entry.lastModified == lastModified) {
+      if (!entry.used) {
+        entries.put(key, new Entry(length, lastModified, entry.value, true));
+      }
+      return entry.value;
+    }
+
+    String value = compute.apply(path);
+    if (System.currentTimeMillis() - lastModified >= RACY_DELAY_MILLIS) {
+      entries.put(key, new Entry(length, lastModified, value, true));
+      dirty = true;
+    } else if (entry != null) {
+      entries.remove(key);
+      dirty = true;
+    }
+    return value;
+  }
+
+  /**
+   * Writes the used entries, if a value changed or an entry was not used since the load or the last
+   * save.
+   */
+  public synchronized void save() throws IOException {
+    List<Map.Entry<String, Entry>> used = new ArrayList<>();
+    for (Map.Entry<String, Entry> e : entries.entrySet()) {
+      if (e.getValue().used) {
+        used.add(e);
+      }
+    }
+    if (!dirty && used.size() == entries.size()) {
+      return;
+    }
+    dirty = false;
+    file.getParentFile().mkdirs();
+    Path tmp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+    try {
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(used.size());
+        for (Map.Entry<String, Entry> e : used) {
+          Entry entry = e.getValue();
+          out.writeUTF(e.getKey());
+          out.writeLong(entry.length);
+          out.writeLong(entry.lastModified);
+          out.writeUTF(entry.value);
+        }
+      }
+      Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      Files.deleteIfExists(tmp);
+      dirty = true;
+      throw e;
+    }
+  }
+
+  private static final class Entry {
+    final long length;
+    final long lastModified;
+    final String value;
+    final boolean used;
+
+    Entry(long length, long lastModified, String value, boolean used) {
+      this.length = length;
+      this.lastModified = lastModified;
+      this.value = value;
+      this.used = used;
+    }
+  }
+}
@@ -0,0 +1,252 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import org.codehaus.plexus.util.AbstractScanner;
+import org.codehaus.plexus.util.MatchPatterns;
+
+/**
+ * Index of the files of source directories, shared by the JVM, equivalent to a plexus {@link
+ * org.codehaus.plexus.util.DirectoryScanner} with the default excludes. The listing of a directory
+ * is cached with its last modification time, which changes when an entry is added, removed or
+ * renamed, so finding the sources again only costs a stat per directory, and the directories that
+ * changed are listed again. Canonical paths are resolved once per directory: only the symbolic
+ * links need to be resolved by the file system, the canonical path of the other entries is the one
+ * of their directory followed by their name.
+ */
+public final class SourceIndex {
+
+  /**
+   * Listings done less than this delay after the last modification of the directory are not
+   * trusted: a second change in the same timestamp tick would go unnoticed.
+   */
+  private static final long RACY_DELAY_MILLIS = 2000;
+
+  private static final int MAX_ROOTS = 512;
+
+  // access-ordered, so the first entry is the least recently used one
+  private static final Map<File, SourceIndex> INDEXES =
+      new LinkedHashMap<File, SourceIndex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, SourceIndex> eldest) {
+          return size() > MAX_ROOTS;
+        }
+      };
+
+  private final File root;
+  private final Dir tree = new Dir();
+
+  // the files found by the last call, reused while no directory changes
+  private String filesKey;
+  private List<File> files;
+
+  private SourceIndex(File root) {
+    this.root = root;
+  }
+
+  /**
+   * Returns the files of the {@code roots} matching the include and exclude patterns, sorted by
+   * path (so the command line of the compiler is reproducible). The roots are scanned in parallel.
+   *
+   * @see #find(File, Collection, Collection, boolean)
+   */
+  public static List<File> find(
+      List<File> roots, Collection<String> includes, Collection<String> excludes, boolean canonical)
+      throws Exception {
+    List<File> files = new ArrayList<>();
+    if (roots.size() == 1) {
+      files.addAll(find(roots.get(0), includes, excludes, canonical));
+    } else {
+      List<ForkJoinTask<List<File>>> tasks = new ArrayList<>(roots.size());
+      for (File root : roots) {
+        tasks.add(
+            ForkJoinPool.commonPool().submit(() -> find(root, includes, excludes, canonical)));
+      }
+      for (ForkJoinTask<List<File>> task : tasks) {
+        try {
+          files.addAll(task.get());
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          throw cause instanceof Exception ? (Exception) cause : e;
+        }
+      }
+    }
+    Collections.sort(files);
+    return files;
+  }
+
+  /**
+   * Returns the files of {@code root} matching the include and exclude patterns (relative to the
+   * root, eg "**&#47;*.scala").
+   *
+   * @param canonical Should use CanonicalPath to normalize path (see {@link FileUtils#fileOf})
+   * @throws IllegalStateException if the root is not a directory, as a DirectoryScanner would do
+   */
+  public static List<File> find(
+      File root, Collection<String> includes, Collection<String> excludes, boolean canonical)
+      throws Exception {
+    if (!root.isDirectory()) {
+      throw new IllegalStateException("basedir " + root + " does not exist or is not a directory");
+    }
+    SourceIndex index;
+    synchronized (INDEXES) {
+      index = INDEXES.computeIfAbsent(root.getAbsoluteFile(), SourceIndex::new);
+    }
+    return index.files(includes, excludes, canonical);
+  }
+
+  private synchronized List<File> files(
+      Collection<String> includes, Collection<String> excludes, boolean canonical)
+      throws Exception {
+    boolean changed = tree.refresh(root);
+    String key = includes + "|" + excludes + "|" + canonical;
+    if (changed || !key.equals(filesKey)) {
+      Filter filter = new Filter(includes, excludes);
+      List<File> found = new ArrayList<>();
+      File dir = FileUtils.fileOf(root, canonical);
+      tree.collect(dir, "", filter, canonical, found);
+      files = Collections.unmodifiableList(found);
+      filesKey = key;
+    }
+    return files;
+  }
+
+  /** Cached listing of a directory. */
+  private static final class Dir {
+    long lastModified = -1;
+    boolean trusted;
+    List<String> files = Collections.emptyList();
+    Map<String, Dir> dirs = Collections.emptyMap();
+    // names of the entries that are symbolic links
+    Set<String> links = Collections.emptySet();
+    // canonical path, when this directory is a symbolic link
+    File canonical;
+
+    /** Lists again the directories that changed, returns true if any did. */
+    boolean refresh(File dir) {
+      boolean changed = false;
+      long current = dir.lastModified();
+      if (!trusted || current != lastModified) {
+        long listedAt = System.currentTimeMillis();
+        String[] names = dir.list();
+        List<String> newFiles = new ArrayList<>();
+        Map<String, Dir> newDirs = new TreeMap<>();
+        Set<String> newLinks = new HashSet<>();
+        if (names != null) {
+          for (String name : names) {
+            Path child = dir.toPath().resolve(name);
+            BasicFileAttributes attrs;
+            try {
+              attrs =
+                  Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+              if (attrs.isSymbolicLink()) {
+                newLinks.add(name);
+                attrs = Files.readAttributes(child, BasicFileAttributes.class);
+              }
+            } catch (IOException e) {
+              // deleted, or broken link
+              continue;
+            }
+            if (attrs.isDirectory()) {
+              // the target of a link may have changed
+              Dir previous = newLinks.contains(name) ? null : dirs.get(name);
+              newDirs.put(name, previous != null ? previous : new Dir());
+            } else if (attrs.isRegularFile()) {
+              newFiles.add(name);
+            }
+          }
+        }
+        Collections.sort(newFiles);
+        changed =
+            lastModified < 0
+                || !newFiles.equals(files)
+                || !newDirs.equals(dirs)
+                || !newLinks.equals(links);
+        files = newFiles;
+        dirs = newDirs;
+        links = newLinks;
+        lastModified = current;
+        trusted = listedAt - current >= RACY_DELAY_MILLIS;
+      }
+      for (Map.Entry<String, Dir> entry : dirs.entrySet()) {
+        changed |= entry.getValue().refresh(new File(dir, entry.getKey()));
+      }
+      return changed;
+    }
+
+    /**
+     * @param dir the path of this directory, already canonical if {@code canonical}
+     */
+    void collect(File dir, String prefix, Filter filter, boolean canonical, List<File> found)
+        throws Exception {
+      for (String name : files) {
+        if (filter.accepts(prefix + name)) {
+          found.add(path(dir, name, canonical));
+        }
+      }
+      for (Map.Entry<String, Dir> entry : dirs.entrySet()) {
+        String name = entry.getKey();
+        Dir child = entry.getValue();
+        File childPath;
+        if (canonical && links.contains(name)) {
+          if (child.canonical == null) {
+            child.canonical = new File(dir, name).getCanonicalFile();
+          }
+          childPath = child.canonical;
+        } else {
+          childPath = new File(dir, name);
+        }
+        child.collect(childPath, prefix + name + File.separator, filter, canonical, found);
+      }
+    }
+
+    private File path(File dir, String name, boolean canonical) throws Exception {
+      File file = new File(dir, name);
+      return canonical && links.contains(name) ? file.getCanonicalFile() : file;
+    }
+  }
+
+  /**
+   * The include and exclude patterns, normalized and matched the same way as a DirectoryScanner
+   * does.
+   */
+  private static final class Filter {
+    private final MatchPatterns includes;
+    private final MatchPatterns excludes;
+
+    Filter(Collection<String> includes, Collection<String> excludes) {
+      List<String> allExcludes = new ArrayList<>(excludes);
+      allExcludes.addAll(Arrays.asList(AbstractScanner.DEFAULTEXCLUDES));
+      this.includes =
+          MatchPatterns.from(
+              includes.isEmpty() ? Collections.singleton("**") : normalize(includes));
+      this.excludes = MatchPatterns.from(normalize(allExcludes));
+    }
+
+    private static List<String> normalize(Collection<String> patterns) {
+      List<String> normalized = new ArrayList<>(patterns.size());
+      for (String pattern : patterns) {
+        String p =
+            pattern.trim().replace('/', File.separatorChar).replace('\\', File.separatorChar);
+        normalized.add(p.endsWith(File.separator) ? p + "**" : p);
+      }
+      return normalized;
+    }
+
+    boolean accepts(String path) {
+      return includes.matches(path, true) && !excludes.matches(path, true);
+    }
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package util;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches source directories, grouped by scope (eg main and test), and reports the scopes with
+ * changes. Relies on the native file watching of the OS when available, and falls back to polling
+ * the last modification times of the files (the JDK watch service on macOS is itself a slow
+ * polling).
+ *
+ * @param <S> type of the scopes
+ */
+public final class SourceWatcher<S> implements Closeable {
+
+  private final Map<S, List<Path>> roots = new LinkedHashMap<>();
+  private final long debounceMillis;
+  private final long pollMillis;
+
+  // native watching
+  private final WatchService watchService;
+  private final Map<WatchKey, S> scopes = new HashMap<>();
+
+  // polling fallback
+  private Map<S, Map<Path, Long>> snapshot;
+
+  /**
+   * @param roots the source directories of each scope (missing ones are ignored)
+   * @param debounceMillis delay without change after a change before reporting it, so a burst of
+   *     changes (eg a save-all or a checkout) is reported once
+   * @param pollMillis interval between two scans, when native watching is unavailable
+   */
+  public SourceWatcher(Map<S, List<File>> roots, long debounceMillis, long pollMillis)
+      throws IOException {
+    this(roots, debounceMillis, pollMillis, false);
+  }
+
+  SourceWatcher(Map<S, List<File>> roots, long debounceMillis, long pollMillis, boolean polling)
+      throws IOException {
+    for (Map.Entry<S, List<File>> entry : roots.entrySet()) {
+      List<Path> paths = new ArrayList<>();
+      for (File root : entry.getValue()) {
+        paths.add(root.toPath());
+      }
+      this.roots.put(entry.getKey(), paths);
+    }
+    this.debounceMillis = debounceMillis;
+    this.pollMillis = pollMillis;
+    this.watchService = polling ? null : nativeWatchService();
+    if (watchService != null) {
+      for (Map.Entry<S, List<Path>> entry : this.roots.entrySet()) {
+        for (Path root : entry.getValue()) {
+          register(entry.getKey(), root);
+        }
+      }
+    } else {
+      snapshot = snapshot();
+    }
+  }
+
+  private static WatchService nativeWatchService() {
+    try {
+      WatchService service = FileSystems.getDefault().newWatchService();
+      if (service.getClass().getName().contains("Polling")) {
+        service.close();
+        return null;
+      }
+      return service;
+    } catch (IOException | UnsupportedOperationException e) {
+      return null;
+    }
+  }
+
+  /** Returns true if the changes are detected by polling. */
+  public boolean isPolling() {
+    return watchService == null;
+  }
+
+  /** Blocks until some sources change, and returns the scopes of the changed sources. */
+  public Set<S> awaitChanges() throws IOException, InterruptedException {
+    return watchService != null ? awaitEvents() : awaitPolledChanges();
+  }
+
+  private Set<S> awaitEvents() throws IOException, InterruptedException {
+    Set<S> changed = new LinkedHashSet<>();
+    WatchKey key = watchService.take();
+    while (key != null) {
+      S scope = scopes.get(key);
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (event.kind() == OVERFLOW) {
+          changed.addAll(roots.keySet());
+        } else if (scope != null) {
+          changed.add(scope);
+          Path child = ((Path) key.watchable()).resolve((Path) event.context());
+          if (event.kind() == ENTRY_CREATE && Files.isDirectory(child)) {
+            register(scope, child);
+          }
+        }
+      }
+      if (!key.reset()) {
+        scopes.remove(key);
+      }
+      key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+    }
+    return changed;
+  }
+
+  private void register(S scope, Path root) throws IOException {
+    if (!Files.isDirectory(root)) {
+      return;
+    }
+    Files.walkFileTree(
+        root,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+              throws IOException {
+            try {
+              scopes.put(
+                  dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), scope);
+            } catch (NoSuchFileException e) {
+              return FileVisitResult.SKIP_SUBTREE;
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFileFailed(Path file, IOException e) {
+            // deleted while registering
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+
+  private Set<S> awaitPolledChanges() throws IOException, InterruptedException {
+    Set<S> changed = new LinkedHashSet<>();
+    while (changed.isEmpty()) {
+      Thread.sleep(pollMillis);
+      Map<S, Map<Path, Long>> current = snapshot();
+      for (S scope : roots.keySet()) {
+        if (!current.get(scope).equals(snapshot.get(scope))) {
+          changed.add(scope);
+        }
+      }
+      snapshot = current;
+    }
+    // debounce: wait for a scan without change
+    while (true) {
+      Thread.sleep(debounceMillis);
+      Map<S, Map<Path, Long>> current = snapshot();
+      if (current.equals(snapshot)) {
+        break;
+      }
+      for (S scope : roots.keySet()) {
+        if (!current.get(scope).equals(snapshot.get(scope))) {
+          changed.add(scope);
+        }
+      }
+      snapshot = current;
+    }
+    return changed;
+  }
+
+  private Map<S, Map<Path, Long>> snapshot() throws IOException {
+    Map<S, Map<Path, Long>> result = new HashMap<>();
+    for (Map.Entry<S, List<Path>> entry : roots.entrySet()) {
+      Map<Path, Long> lastModifiedByPath = new HashMap<>();
+      for (Path root : entry.getValue()) {
+        if (!Files.isDirectory(root)) {
+          continue;
+        }
+        Files.walkFileTree(
+            root,
+            new SimpleFileVisitor<Path>() {
+              @Override
+              public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                lastModifiedByPath.put(file, attrs.lastModifiedTime().toMillis());
+                return FileVisitResult.CONTINUE;
+              }
+
+              @Override
+              public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // deleted while scanning
+                return FileVisitResult.CONTINUE;
+              }
+            });
+      }
+      result.put(entry.getKey(), lastModifiedByPath);
+    }
+    return result;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (watchService != null) {
+      watchService.close();
+    }
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package sbt_inc;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.*;
+import java.util.function.Supplier;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import sbt.internal.inc.Analysis;
+import sbt.internal.inc.CompileOutput;
+import sbt.internal.inc.EmptyStamp$;
+import sbt.internal.inc.SourceInfos$;
+import scala.Tuple3;
+import scala.jdk.javaapi.CollectionConverters;
+import xsbti.Logger;
+import xsbti.T2;
+import xsbti.VirtualFileRef;
+import xsbti.api.*;
+import xsbti.compile.*;
+import xsbti.compile.analysis.Stamp;
+
+public class AffectedTestsTest {
+
+  private static final long SINCE = 10_000L;
+  private static final long BEFORE = SINCE - 1;
+
+  private static final Logger NO_LOG =
+      new Logger() {
+        @Override
+        public void error(Supplier<String> msg) {}
+
+        @Override
+        public void warn(Supplier<String> msg) {}
+
+        @Override
+        public void info(Supplier<String> msg) {}
+
+        @Override
+        public void debug(Supplier<String> msg) {}
+
+        @Override
+        public void trace(Supplier<Throwable> exception) {}
+      };
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void missing_test_analysis_should_select_all_the_tests() {
+    File analysis = new File(tmp.getRoot(), "analysis");
+    assertFalse(
+        AffectedTests.of(new File(analysis, "compile"), new File(analysis, "test-compile"), 0L)
+            .isPresent());
+  }
+
+  @Test
+  public void main_classes_depending_transitively_on_a_change_should_affect_their_tests()
+      throws Exception {
+    // a.A changed, a.C depends on a.B which depends on a.A
+    File main =
+        save(
+            "compile",
+            new SourceBuilder("A.scala").defines("a.A", SINCE),
+            new SourceBuilder("B.scala").defines("a.B", BEFORE).dependsOn("a.A"),
+            new SourceBuilder("C.scala").defines("a.C", BEFORE).dependsOn("a.B"),
+            new SourceBuilder("D.scala").defines("a.D", BEFORE));
+    File test =
+        save(
+            "test-compile",
+            new SourceBuilder("CTest.scala").defines("t.CTest", BEFORE).dependsOnMain("a.C"),
+            new SourceBuilder("DTest.scala").defines("t.DTest", BEFORE).dependsOnMain("a.D"));
+
+    assertEquals(
+        Optional.of(Collections.singleton("t.CTest")), AffectedTests.of(main, test, SINCE));
+  }
+
+  @Test
+  public void tests_depending_on_an_object_should_be_found_by_its_binary_name() throws Exception {
+    File main = save("compile", new SourceBuilder("O.scala").defines("a.O", "a.O$", SINCE));
+    File test =
+        save(
+            "test-compile",
+            new SourceBuilder("OTest.scala").defines("t.OTest", BEFORE).dependsOnMain("a.O$"));
+
+    assertEquals(
+        Optional.of(Collections.singleton("t.OTest")), AffectedTests.of(main, test, SINCE));
+  }
+
+  @Test
+  public void classes_of_the_same_source_and_their_dependents_should_be_affected()
+      throws Exception {
+    // t.Fixtures is in the source of t.Base, on which nothing depends, and t.FooTest depends on it
+    File main = save("compile");
+    File test =
+        save(
+            "test-compile",
+            new SourceBuilder("Base.scala").defines("t.Base", SINCE).defines("t.Fixtures", BEFORE),
+            new SourceBuilder("FooTest.scala").defines("t.FooTest", BEFORE).dependsOn("t.Fixtures"),
+            new SourceBuilder("BarTest.scala").defines("t.BarTest", BEFORE));
+
+    assertEquals(
+        Optional.of(new HashSet<>(Arrays.asList("t.Base", "t.Fixtures", "t.FooTest"))),
+        AffectedTests.of(main, test, SINCE));
+  }
+
+  @Test
+  public void classes_compiled_before_the_cycle_should_not_be_affected() throws Exception {
+    File main = save("compile", new SourceBuilder("A.scala").defines("a.A", BEFORE));
+    File test =
+        save(
+            "test-compile",
+            new SourceBuilder("ATest.scala").defines("t.ATest", BEFORE).dependsOnMain("a.A"),
+            new SourceBuilder("NewTest.scala").defines("t.NewTest", SINCE));
+
+    assertEquals(
+        Optional.of(Collections.singleton("t.NewTest")), AffectedTests.of(main, test, SINCE));
+    assertEquals(
+        Optional.of(new HashSet<>(Arrays.asList("t.ATest", "t.NewTest"))),
+        AffectedTests.of(main, test, BEFORE));
+  }
+
+  /** Saves the analysis of the sources, as the incremental compiler would. */
+  private File save(String name, SourceBuilder... sources) throws Exception {
+    Analysis analysis = Analysis.empty();
+    for (SourceBuilder source : sources) {
+      analysis = source.addTo(analysis);
+    }
+    @SuppressWarnings("unchecked")
+    MiniSetup setup =
+        MiniSetup.of(
+            CompileOutput.apply(tmp.getRoot().toPath().resolve(name)),
+            MiniOptions.of(new FileHash[] {}, new String[] {}, new String[] {}),
+            "2.13.16",
+            CompileOrder.Mixed,
+            false,
+            new T2[] {});
+    File file = new File(tmp.getRoot(), "analysis/" + name);
+    AnalysisStores.of(file, AnalysisFormat.binary, false, NO_LOG)
+        .set(AnalysisContents.create(analysis, setup));
+    return file;
+  }
+
+  /** A source of an analysis, the classes it defines and their dependencies. */
+  private static final class SourceBuilder {
+    private final VirtualFileRef source;
+    private final List<AnalyzedClass> classes = new ArrayList<>();
+    private final List<Analysis.NonLocalProduct> products = new ArrayList<>();
+    private final List<InternalDependency> internalDeps = new ArrayList<>();
+    private final List<ExternalDependency> externalDeps = new ArrayList<>();
+
+    SourceBuilder(String path) {
+      source = VirtualFileRef.of("${BASE}/src/" + path);
+    }
+
+    SourceBuilder defines(String className, long compilationTimestamp) {
+      return defines(className, className, compilationTimestamp);
+    }
+
+    SourceBuilder defines(String className, String binaryName, long compilationTimestamp) {
+      classes.add(analyzedClass(className, compilationTimestamp));
+      products.add(
+          new Analysis.NonLocalProduct(
+              className,
+              binaryName,
+              VirtualFileRef.of("${OUT}/" + binaryName.replace('.', '/') + ".class"),
+              EmptyStamp$.MODULE$));
+      return this;
+    }
+
+    /** Makes the last class defined depend on a class of the same compilation. */
+    SourceBuilder dependsOn(String className) {
+      internalDeps.add(
+          InternalDependency.of(lastClass(), className, DependencyContext.DependencyByMemberRef));
+      return this;
+    }
+
+    /** Makes the last class defined depend on a class of the main compilation. */
+    SourceBuilder dependsOnMain(String binaryName) {
+      externalDeps.add(
+          ExternalDependency.of(
+              lastClass(),
+              binaryName,
+              analyzedClass(binaryName, 0L),
+              DependencyContext.DependencyByMemberRef));
+      return this;
+    }
+
+    private String lastClass() {
+      return classes.get(classes.size() - 1).name();
+    }
+
+    Analysis addTo(Analysis analysis) {
+      return analysis.addSource(
+          source,
+          CollectionConverters.asScala(classes),
+          EmptyStamp$.MODULE$,
+          SourceInfos$.MODULE$.emptyInfo(),
+          CollectionConverters.asScala(products),
+          CollectionConverters.asScala(Collections.<Analysis.LocalProduct>emptyList()),
+          CollectionConverters.asScala(internalDeps),
+          CollectionConverters.asScala(externalDeps),
+          CollectionConverters.asScala(
+              Collections.<Tuple3<VirtualFileRef, String, Stamp>>emptyList()));
+    }
+
+    private static AnalyzedClass analyzedClass(String name, long compilationTimestamp) {
+      Companions companions =
+          Companions.of(
+              classLike(name, DefinitionType.ClassDef), classLike(name, DefinitionType.Module));
+      return AnalyzedClass.of(
+          compilationTimestamp,
+          name,
+          SafeLazy.strict(companions),
+          name.hashCode(),
+          new NameHash[] {},
+          false);
+    }
+
+    private static ClassLike classLike(String name, DefinitionType definitionType) {
+      return ClassLike.of(
+          name,
+          Public.of(),
+          new Modifiers(false, false, false, false, false, false, false, false),
+          new Annotation[] {},
+          definitionType,
+          SafeLazy.strict(EmptyType.of()),
+          SafeLazy.strict(
+              Structure.of(
+                  SafeLazy.strict(new Type[] {}),
+                  SafeLazy.strict(new ClassDefinition[] {}),
+                  SafeLazy.strict(new ClassDefinition[] {}))),
+          new String[] {},
+          new Type[] {},
+          true,
+          new TypeParameter[] {});
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package sbt_inc;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.function.Supplier;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import sbt.internal.inc.Analysis$;
+import sbt.internal.inc.CompileOutput;
+import xsbti.Logger;
+import xsbti.T2;
+import xsbti.compile.*;
+
+public class AnalysisStoresTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private static final Logger NO_LOG =
+      new Logger() {
+        @Override
+        public void error(Supplier<String> msg) {}
+
+        @Override
+        public void warn(Supplier<String> msg) {}
+
+        @Override
+        public void info(Supplier<String> msg) {}
+
+        @Override
+        public void debug(Supplier<String> msg) {}
+
+        @Override
+        public void trace(Supplier<Throwable> exception) {}
+      };
+
+  private AnalysisContents contents() {
+    @SuppressWarnings("unchecked")
+    MiniSetup setup =
+        MiniSetup.of(
+            CompileOutput.apply(tmp.getRoot().toPath().resolve("classes")),
+            MiniOptions.of(new FileHash[] {}, new String[] {"-deprecation"}, new String[] {}),
+            "2.13.16",
+            CompileOrder.Mixed,
+            false,
+            new T2[] {});
+    return AnalysisContents.create(Analysis$.MODULE$.empty(), setup);
+  }
+
+  @Test
+  public void analysis_should_be_read_whatever_its_format() throws Exception {
+    for (AnalysisFormat format : AnalysisFormat.values()) {
+      File file = new File(tmp.getRoot(), "compile-" + format);
+      AnalysisStores.of(file, format, false, NO_LOG).set(contents());
+
+      assertEquals(format, AnalysisStores.formatOf(file));
+      Optional<AnalysisContents> read = AnalysisStores.read(file);
+      assertTrue(read.isPresent());
+      assertArrayEquals(
+          new String[] {"-deprecation"}, read.get().getMiniSetup().options().scalacOptions());
+    }
+  }
+
+  @Test
+  public void reads_should_wait_for_the_asynchronous_write() throws Exception {
+    File file = new File(tmp.getRoot(), "compile");
+    AnalysisStores.of(file, AnalysisFormat.consistent, true, NO_LOG).set(contents());
+
+    assertTrue(AnalysisStores.read(file).isPresent());
+    assertTrue(AnalysisStores.of(file, AnalysisFormat.binary, false, NO_LOG).get().isPresent());
+  }
+
+  @Test
+  public void failed_asynchronous_write_should_be_reported_once() throws Exception {
+    // the parent of the analysis file is not a directory
+    File file = new File(tmp.newFile("target"), "compile");
+    AnalysisStores.of(file, AnalysisFormat.binary, true, NO_LOG).set(contents());
+
+    try {
+      AnalysisStores.awaitWrite(file);
+      fail("the failure of the write should be reported");
+    } catch (IOException e) {
+      assertNotNull(e.getCause());
+    }
+    AnalysisStores.awaitWrite(file);
+    assertFalse(AnalysisStores.read(file).isPresent());
+  }
+
+  @Test
+  public void missing_analysis_should_be_empty() {
+    assertFalse(AnalysisStores.read(new File(tmp.getRoot(), "missing")).isPresent());
+  }
+}
@@ -0,0 +1,217 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package sbt_inc;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+import sbt.internal.inc.LoggedReporter;
+import sbt.util.InterfaceUtil;
+import scala.Option;
+import scala.collection.immutable.List$;
+import scala_maven_executions.ForkLogLevel;
+import util.CompileMetrics;
+import xsbti.Position;
+import xsbti.Problem;
+import xsbti.Reporter;
+import xsbti.Severity;
+
+public class CompileEventsTest {
+
+  private static final class Recorder implements CompileEvents.Listener {
+    final List<String> logs = new ArrayList<>();
+    final List<CompileEvents.Diagnostic> diagnostics = new ArrayList<>();
+    final CompileMetrics metrics = new CompileMetrics();
+
+    @Override
+    public void onLog(ForkLogLevel level, String message) {
+      logs.add(level + " " + message);
+    }
+
+    @Override
+    public void onDiagnostic(CompileEvents.Diagnostic diagnostic) {
+      diagnostics.add(diagnostic);
+    }
+
+    @Override
+    public void onMetric(byte kind, String name, long value) {
+      CompileEvents.toMaven(null, null, metrics).onMetric(kind, name, value);
+    }
+  }
+
+  @Test
+  public void events_should_be_read_as_written() throws Exception {
+    ByteArrayOutputStream channel = new ByteArrayOutputStream();
+    CompileEvents.Writer writer = new CompileEvents.Writer(channel, false);
+    xsbti.Logger logger = writer;
+    logger.info(() -> "Compiling 2 Scala sources to /p/target/classes ...");
+    logger.debug(() -> "not sent");
+    Reporter reporter = writer.reporter(100);
+    reporter.log(
+        problem(Severity.Warn, "match may not be exhaustive.\nIt would fail on: None", 13, 4));
+    reporter.log(problem(Severity.Error, "type mismatch", 4, 24));
+    reporter.printSummary();
+    CompileMetrics metrics = new CompileMetrics();
+    metrics.addTime("javac", 5_000_000L);
+    metrics.addPhaseTime("typer", 7_000_000L);
+    metrics.count("recompiled", 2);
+    writer.metrics(metrics);
+    writer.success();
+
+    Recorder recorder = new Recorder();
+    assertTrue(read(channel.toByteArray(), recorder));
+
+    assertEquals("INFO Compiling 2 Scala sources to /p/target/classes ...", recorder.logs.get(0));
+    assertEquals(2, recorder.diagnostics.size());
+    CompileEvents.Diagnostic warning = recorder.diagnostics.get(0);
+    assertEquals(ForkLogLevel.WARN, warning.severity);
+    assertEquals("/p/src/main/scala/A.scala", warning.sourcePath);
+    assertEquals(13, warning.line);
+    assertEquals(5, warning.column);
+    assertEquals("match may not be exhaustive.\nIt would fail on: None", warning.message);
+    assertTrue(warning.rendered, warning.rendered.contains("/p/src/main/scala/A.scala:13"));
+    assertTrue(warning.rendered, warning.rendered.contains("It would fail on: None"));
+    assertEquals(ForkLogLevel.ERROR, recorder.diagnostics.get(1).severity);
+    // the summary
+    assertEquals(3, recorder.logs.size());
+    assertEquals(Long.valueOf(5_000_000L), recorder.metrics.time("javac"));
+    assertEquals(Long.valueOf(7_000_000L), recorder.metrics.phaseTime("typer"));
+    assertEquals(Long.valueOf(2), recorder.metrics.counts().get("recompiled"));
+  }
+
+  @Test
+  public void diagnostics_should_be_given_to_the_reporter_and_logged_as_in_process()
+      throws Exception {
+    Problem original = problem(Severity.Warn, "match may not be exhaustive.", 13, 4);
+    ByteArrayOutputStream channel = new ByteArrayOutputStream();
+    CompileEvents.Writer writer = new CompileEvents.Writer(channel, false);
+    writer.reporter(100).log(original);
+    writer.success();
+
+    List<String> warnings = new ArrayList<>();
+    Log log = warnings(warnings);
+    List<Problem> problems = new ArrayList<>();
+    Reporter reporter =
+        new LoggedReporter(100, new MavenLoggerSbtAdapter(log), pos -> pos) {
+          @Override
+          public void log(Problem problem) {
+            problems.add(problem);
+            super.log(problem);
+          }
+        };
+    assertTrue(read(channel.toByteArray(), CompileEvents.toMaven(log, reporter, null)));
+
+    assertEquals(1, problems.size());
+    Problem problem = problems.get(0);
+    assertEquals(Severity.Warn, problem.severity());
+    assertEquals("match may not be exhaustive.", problem.message());
+    Position position = problem.position();
+    assertEquals(Optional.of("/p/src/main/scala/A.scala"), position.sourcePath());
+    assertEquals(Optional.of(13), position.line());
+    assertEquals(Optional.of(4), position.pointer());
+    assertEquals("  val message: String = 1", position.lineContent());
+    assertEquals(Optional.of("    "), position.pointerSpace());
+    assertTrue(problem.rendered().isPresent());
+    assertTrue(reporter.hasWarnings());
+
+    List<String> inProcess = new ArrayList<>();
+    new LoggedReporter(100, new MavenLoggerSbtAdapter(warnings(inProcess)), pos -> pos)
+        .log(original);
+    assertEquals(inProcess, warnings);
+  }
+
+  private static Log warnings(List<String> warnings) {
+    return new SystemStreamLog() {
+      @Override
+      public void warn(CharSequence content) {
+        warnings.add(content.toString());
+      }
+    };
+  }
+
+  @Test
+  public void failure_should_report_its_stack_trace_unless_it_only_reports_errors()
+      throws Exception {
+    ByteArrayOutputStream channel = new ByteArrayOutputStream();
+    new CompileEvents.Writer(channel, false).failure(new IllegalStateException("boom"));
+    Recorder recorder = new Recorder();
+    assertFalse(read(channel.toByteArray(), recorder));
+    assertEquals(1, recorder.logs.size());
+    assertTrue(recorder.logs.get(0).startsWith("ERROR java.lang.IllegalStateException: boom"));
+
+    channel.reset();
+    new CompileEvents.Writer(channel, false)
+        .failure(
+            new xsbti.CompileFailed() {
+              @Override
+              public String[] arguments() {
+                return new String[0];
+              }
+
+              @Override
+              public Problem[] problems() {
+                return new Problem[0];
+              }
+            });
+    recorder = new Recorder();
+    assertFalse(read(channel.toByteArray(), recorder));
+    assertTrue(recorder.logs.isEmpty());
+  }
+
+  @Test
+  public void text_should_be_reported_as_an_error() throws Exception {
+    Recorder recorder = new Recorder();
+    byte[] text = "Error: Could not find or load main class Foo\n".getBytes(StandardCharsets.UTF_8);
+    assertFalse(read(text, recorder));
+    assertEquals("ERROR Error: Could not find or load main class Foo", recorder.logs.get(0));
+  }
+
+  @Test(expected = EOFException.class)
+  public void missing_result_should_fail() throws Exception {
+    ByteArrayOutputStream channel = new ByteArrayOutputStream();
+    xsbti.Logger logger = new CompileEvents.Writer(channel, false);
+    logger.info(() -> "compiling");
+    read(channel.toByteArray(), new Recorder());
+  }
+
+  private static boolean read(byte[] events, CompileEvents.Listener listener) throws Exception {
+    return new CompileEvents.Reader(new ByteArrayInputStream(events)).read(listener);
+  }
+
+  private static Problem problem(Severity severity, String message, int line, int pointer) {
+    return InterfaceUtil.problem(
+        "",
+        InterfaceUtil.position(
+            Option.apply(line),
+            "  val message: String = 1",
+            Option.empty(),
+            Option.apply(pointer),
+            Option.apply(String.join("", Collections.nCopies(pointer, " "))),
+            Option.apply("/p/src/main/scala/A.scala"),
+            Option.empty(),
+            Option.empty(),
+            Option.empty(),
+            Option.empty(),
+            Option.empty(),
+            Option.empty(),
+            Option.empty()),
+        message,
+        severity,
+        Option.empty(),
+        Option.empty(),
+        List$.MODULE$.empty(),
+        List$.MODULE$.empty());
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package sbt_inc;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.junit.Test;
+
+public class CompileSchedulerTest {
+
+  @Test(timeout = 10_000)
+  public void waiting_compilations_should_start_by_priority() throws Exception {
+    CompileScheduler scheduler = new CompileScheduler(1);
+    List<Integer> started = Collections.synchronizedList(new ArrayList<>());
+
+    CompileScheduler.Permit first = scheduler.acquire(0);
+    List<Thread> threads = new ArrayList<>();
+    for (int priority : new int[] {1, 5, 3}) {
+      Thread t =
+          new Thread(
+              () -> {
+                try (CompileScheduler.Permit permit = scheduler.acquire(priority)) {
+                  started.add(priority);
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                }
+              });
+      t.start();
+      threads.add(t);
+      while (scheduler.waiting() < threads.size()) {
+        Thread.sleep(10);
+      }
+    }
+
+    assertEquals(1, scheduler.running());
+    first.close();
+    first.close(); // closing twice should not free a second slot
+    for (Thread t : threads) {
+      t.join();
+    }
+
+    assertEquals(Arrays.asList(5, 3, 1), started);
+    assertEquals(0, scheduler.running());
+  }
+
+  @Test(timeout = 10_000)
+  public void negative_parallelism_should_not_throttle() throws Exception {
+    CompileScheduler scheduler = CompileScheduler.get(-1);
+    int count = CompileScheduler.defaultParallelism() + 2;
+    List<CompileScheduler.Permit> permits = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      permits.add(scheduler.acquire(0));
+    }
+    assertEquals(count, scheduler.running());
+    for (CompileScheduler.Permit permit : permits) {
+      permit.close();
+    }
+    assertEquals(0, scheduler.running());
+  }
+
+  @Test
+  public void default_parallelism_should_be_the_available_processors() {
+    assertEquals(Runtime.getRuntime().availableProcessors(), CompileScheduler.defaultParallelism());
+  }
+
+  @Test
+  public void critical_path_should_be_the_longest_chain_of_downstream_nodes() {
+    // h has more downstream nodes than a, but a is on the longer chain: a -> b -> c -> d
+    Map<String, List<String>> graph = new HashMap<>();
+    graph.put("h", Arrays.asList("x", "y", "z", "d"));
+    graph.put("a", Collections.singletonList("b"));
+    graph.put("b", Collections.singletonList("c"));
+    graph.put("c", Collections.singletonList("d"));
+    Function<String, List<String>> downstream =
+        node -> graph.getOrDefault(node, Collections.emptyList());
+
+    assertEquals(4, CompileScheduler.criticalPath("a", downstream));
+    assertEquals(2, CompileScheduler.criticalPath("h", downstream));
+    assertEquals(1, CompileScheduler.criticalPath("d", downstream));
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package sbt_inc;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class CompileServerTest {
+
+  @Test
+  public void request_without_the_token_should_be_closed_unanswered() throws Exception {
+    Process server =
+        new ProcessBuilder(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp",
+                System.getProperty("java.class.path"),
+                CompileServer.class.getName(),
+                "30")
+            .start();
+    try {
+      byte[] token = new byte[CompileServer.TOKEN_LENGTH];
+      Arrays.fill(token, (byte) 'a');
+      OutputStream stdin = server.getOutputStream();
+      stdin.write(token);
+      stdin.write('\n');
+      stdin.flush();
+
+      BufferedReader stdout =
+          new BufferedReader(
+              new InputStreamReader(server.getInputStream(), StandardCharsets.UTF_8));
+      String line = stdout.readLine();
+      assertTrue(line, line.startsWith(CompileServer.PORT_HEADER));
+      int port = Integer.parseInt(line.substring(CompileServer.PORT_HEADER.length()).trim());
+
+      byte[] wrongToken = token.clone();
+      wrongToken[0] = 'b';
+      try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+        // the connection is closed right after the token, before any request is read
+        OutputStream out = socket.getOutputStream();
+        out.write(wrongToken);
+        out.flush();
+        assertEquals(-1, socket.getInputStream().read());
+      }
+    } finally {
+      server.destroy();
+    }
+  }
+}
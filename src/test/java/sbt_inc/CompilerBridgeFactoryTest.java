@@ -0,0 +1,213 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package sbt_inc;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CompilerBridgeFactoryTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void content_key_should_depend_on_the_content_only() throws Exception {
+    File sources = write(tmp.newFile("bridge-sources.jar"), "bridge");
+    File compiler = write(tmp.newFile("scala-compiler.jar"), "compiler 2.13.16");
+    File sameCompiler = write(tmp.newFile("scala-compiler-copy.jar"), "compiler 2.13.16");
+
+    String key = CompilerBridgeFactory.contentKey(Arrays.asList(sources, compiler));
+    assertEquals(16, key.length());
+    assertEquals(key, CompilerBridgeFactory.contentKey(Arrays.asList(sources, sameCompiler)));
+
+    // same name and size, eg a locally rebuilt compiler
+    write(compiler, "compiler 2.13.17");
+    compiler.setLastModified(compiler.lastModified() + 2000);
+    assertNotEquals(key, CompilerBridgeFactory.contentKey(Arrays.asList(sources, compiler)));
+  }
+
+  @Test
+  public void concurrent_installs_should_write_the_jar_once() throws Exception {
+    File jar = new File(tmp.getRoot(), "bridge.jar");
+    AtomicInteger writes = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Object>> installs =
+          executor.invokeAll(
+              Collections.nCopies(
+                  4,
+                  () -> {
+                    CompilerBridgeFactory.install(
+                        jar,
+                        "key",
+                        file -> {
+                          writes.incrementAndGet();
+                          // long enough for the other installs to wait
+                          LockSupport.parkNanos(100_000_000L);
+                          write(file, "compiled bridge");
+                        },
+                        new SystemStreamLog());
+                    return null;
+                  }));
+      for (Future<Object> install : installs) {
+        install.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertEquals(1, writes.get());
+    assertEquals("compiled bridge", read(jar));
+    // the lock file is deleted once the jar is installed
+    assertArrayEquals(
+        new String[] {"bridge.jar", "bridge.jar.key"},
+        Arrays.stream(tmp.getRoot().list()).sorted().toArray());
+  }
+
+  @Test(timeout = 30_000)
+  public void install_should_wait_for_the_lock_of_another_process() throws Exception {
+    File jar = new File(tmp.getRoot(), "bridge.jar");
+    Process holder =
+        new ProcessBuilder(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp",
+                System.getProperty("java.class.path"),
+                LockHolder.class.getName(),
+                jar.getPath() + ".lock",
+                jar.getPath())
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      BufferedReader out =
+          new BufferedReader(
+              new InputStreamReader(holder.getInputStream(), StandardCharsets.UTF_8));
+      assertEquals("locked", out.readLine());
+
+      AtomicInteger writes = new AtomicInteger();
+      Future<?> install =
+          executor.submit(
+              () -> {
+                CompilerBridgeFactory.install(
+                    jar,
+                    "key",
+                    file -> {
+                      writes.incrementAndGet();
+                      write(file, "compiled bridge");
+                    },
+                    new SystemStreamLog());
+                return null;
+              });
+      try {
+        install.get(500, TimeUnit.MILLISECONDS);
+        fail("the install should wait for the lock of the other process");
+      } catch (TimeoutException e) {
+        // expected
+      }
+
+      // let the other process install the jar and release the lock
+      holder.getOutputStream().close();
+      install.get();
+      assertEquals(0, holder.waitFor());
+      assertEquals(0, writes.get());
+      assertEquals("bridge of another build", read(jar));
+    } finally {
+      executor.shutdownNow();
+      holder.destroy();
+    }
+  }
+
+  /** Holds the lock of a bridge jar until its stdin is closed, then installs the jar. */
+  public static final class LockHolder {
+    public static void main(String[] args) throws Exception {
+      try (FileChannel channel =
+              FileChannel.open(
+                  Paths.get(args[0]), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+          FileLock lock = channel.lock()) {
+        System.out.println("locked");
+        System.out.flush();
+        while (System.in.read() >= 0) {
+          // wait for the end of stdin
+        }
+        write(new File(args[1]), "bridge of another build");
+      }
+    }
+  }
+
+  @Test
+  public void failed_install_should_leave_no_jar() throws Exception {
+    File jar = new File(tmp.getRoot(), "bridge.jar");
+    try {
+      CompilerBridgeFactory.install(
+          jar,
+          "key",
+          file -> {
+            write(file, "half a jar");
+            throw new IOException("compilation failed");
+          },
+          new SystemStreamLog());
+      fail();
+    } catch (IOException e) {
+      assertEquals("compilation failed", e.getMessage());
+    }
+    assertFalse(jar.exists());
+
+    CompilerBridgeFactory.install(
+        jar, "key", file -> write(file, "compiled bridge"), new SystemStreamLog());
+    assertEquals("compiled bridge", read(jar));
+  }
+
+  @Test
+  public void jar_compiled_from_another_content_should_be_replaced() throws Exception {
+    File jar = new File(tmp.getRoot(), "bridge.jar");
+    CompilerBridgeFactory.install(
+        jar, "key", file -> write(file, "compiled bridge"), new SystemStreamLog());
+    assertTrue(CompilerBridgeFactory.isInstalled(jar, "key"));
+    assertFalse(CompilerBridgeFactory.isInstalled(jar, "other key"));
+
+    CompilerBridgeFactory.install(
+        jar, "other key", file -> write(file, "recompiled bridge"), new SystemStreamLog());
+    assertEquals("recompiled bridge", read(jar));
+    assertTrue(CompilerBridgeFactory.isInstalled(jar, "other key"));
+  }
+
+  @Test
+  public void jar_compiled_by_sbt_should_be_reused() throws Exception {
+    // same name, without key
+    File jar = write(new File(tmp.getRoot(), "bridge.jar"), "bridge compiled by sbt");
+    assertTrue(CompilerBridgeFactory.isInstalled(jar, "key"));
+    CompilerBridgeFactory.install(
+        jar, "key", file -> fail("the bridge of sbt should be reused"), new SystemStreamLog());
+    assertEquals("bridge compiled by sbt", read(jar));
+  }
+
+  private static File write(File file, String content) throws IOException {
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  private static String read(File file) throws IOException {
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package sbt_inc;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import xsbti.compile.DefinesClass;
+
+public class DefinesClassCacheTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private static void writeJar(File jar, String... entries) throws Exception {
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+      for (String entry : entries) {
+        out.putNextEntry(new ZipEntry(entry));
+        out.closeEntry();
+      }
+    }
+  }
+
+  @Test
+  public void unchanged_jar_should_be_scanned_once() throws Exception {
+    File jar = new File(tmp.getRoot(), "lib.jar");
+    writeJar(jar, "a/A.class");
+
+    DefinesClass first = DefinesClassCache.definesClass(jar.toPath());
+    assertTrue(first.apply("a.A"));
+    assertFalse(first.apply("a.B"));
+    assertSame(first, DefinesClassCache.definesClass(jar.toPath()));
+
+    writeJar(jar, "a/A.class", "a/B.class");
+    jar.setLastModified(jar.lastModified() + 2000);
+    DefinesClass second = DefinesClassCache.definesClass(jar.toPath());
+    assertNotSame(first, second);
+    assertTrue(second.apply("a.B"));
+  }
+
+  @Test
+  public void directory_should_not_be_cached() throws Exception {
+    File dir = tmp.newFolder("classes");
+    DefinesClass definesClass = DefinesClassCache.definesClass(dir.toPath());
+    assertFalse(definesClass.apply("a.A"));
+
+    new File(dir, "a").mkdirs();
+    new File(dir, "a/A.class").createNewFile();
+    assertTrue(DefinesClassCache.definesClass(dir.toPath()).apply("a.A"));
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package sbt_inc;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import org.junit.Test;
+import xsbti.compile.IncOptions;
+
+public class IncrementalOptionsTest {
+
+  @Test
+  public void unset_options_should_keep_zinc_defaults() {
+    IncOptions defaults = IncOptions.of();
+    IncOptions options = new IncrementalOptions().toIncOptions();
+    assertEquals(defaults.transitiveStep(), options.transitiveStep());
+    assertEquals(defaults.recompileAllFraction(), options.recompileAllFraction(), 0.0);
+    assertEquals(defaults.strictMode(), options.strictMode());
+    assertEquals(Collections.emptyList(), new IncrementalOptions().toArgs());
+  }
+
+  @Test
+  public void options_should_survive_args_round_trip() {
+    IncrementalOptions options = new IncrementalOptions();
+    options.transitiveStep = 5;
+    options.recompileAllFraction = 0.8;
+    options.useOptimizedSealed = true;
+    options.ignoredScalacOptions = new String[] {"-Xlint.*", "-deprecation"};
+
+    IncOptions expected = options.toIncOptions();
+    assertEquals(5, expected.transitiveStep());
+    assertEquals(0.8, expected.recompileAllFraction(), 0.0);
+    assertTrue(expected.useOptimizedSealed());
+
+    IncOptions actual = IncrementalOptions.fromArgs(options.toArgs()).toIncOptions();
+    assertEquals(expected.transitiveStep(), actual.transitiveStep());
+    assertEquals(expected.recompileAllFraction(), actual.recompileAllFraction(), 0.0);
+    assertEquals(expected.useOptimizedSealed(), actual.useOptimizedSealed());
+    assertArrayEquals(expected.ignoredScalacOptions(), actual.ignoredScalacOptions());
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package sbt_inc;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import util.CompileMetrics;
+
+public class PhaseTimerTest {
+
+  @Test
+  public void phases_should_last_until_the_next_one_or_stop() throws Exception {
+    CompileMetrics metrics = new CompileMetrics();
+    PhaseTimer timer = new PhaseTimer(metrics);
+
+    timer.startUnit("parser", "A.scala");
+    timer.startUnit("parser", "B.scala");
+    Thread.sleep(20);
+    assertTrue(timer.advance(2, 6, "parser", "typer"));
+    timer.startUnit("typer", "A.scala");
+    Thread.sleep(20);
+    timer.stop();
+    // javac runs, then a second cycle
+    Thread.sleep(50);
+    timer.startUnit("typer", "C.scala");
+    timer.advance(1, 1, "typer", "<no phase>");
+    Thread.sleep(50);
+    timer.stop();
+
+    assertTrue(metrics.phaseTime("parser") >= 20_000_000L);
+    assertTrue(metrics.phaseTime("typer") >= 20_000_000L);
+    assertTrue(metrics.phaseTime("typer") < 50_000_000L);
+    assertNull(metrics.phaseTime("<no phase>"));
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package sbt_inc;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import sbt.internal.inc.ScalaInstance;
+
+public class ScalaInstancesTest {
+
+  private static final List<File> NO_JARS = Collections.emptyList();
+
+  @After
+  public void resetCacheSize() {
+    ScalaInstances.setCacheSize(ScalaInstances.DEFAULT_CACHE_SIZE);
+  }
+
+  @Test
+  public void same_version_and_jars_should_share_instance() {
+    ScalaInstance first = ScalaInstances.acquireScalaInstance("2.13.0", NO_JARS, NO_JARS);
+    ScalaInstance second = ScalaInstances.acquireScalaInstance("2.13.0", NO_JARS, NO_JARS);
+    ScalaInstance other = ScalaInstances.acquireScalaInstance("2.12.0", NO_JARS, NO_JARS);
+    try {
+      assertSame(first, second);
+      assertNotSame(first, other);
+    } finally {
+      ScalaInstances.releaseScalaInstance(first);
+      ScalaInstances.releaseScalaInstance(second);
+      ScalaInstances.releaseScalaInstance(other);
+    }
+  }
+
+  @Test
+  public void disabled_cache_should_close_instance_only_once_released() {
+    ScalaInstances.setCacheSize(0);
+    ScalaInstance instance = ScalaInstances.acquireScalaInstance("2.10.0", NO_JARS, NO_JARS);
+    // the class loaders are closed with the instance
+    assertNotNull(ScalaInstances.classLoaderCache(instance));
+    ScalaInstances.releaseScalaInstance(instance);
+    assertNull(ScalaInstances.classLoaderCache(instance));
+  }
+
+  @Test
+  public void released_instance_should_stay_cached() {
+    ScalaInstance first = ScalaInstances.acquireScalaInstance("2.11.0", NO_JARS, NO_JARS);
+    ScalaInstances.releaseScalaInstance(first);
+    ScalaInstance second = ScalaInstances.acquireScalaInstance("2.11.0", NO_JARS, NO_JARS);
+    ScalaInstances.releaseScalaInstance(second);
+    assertSame(first, second);
+  }
+
+  @Test
+  public void least_recently_used_instance_should_be_evicted() {
+    ScalaInstances.setCacheSize(1);
+    ScalaInstance first = ScalaInstances.acquireScalaInstance("3.0.0", NO_JARS, NO_JARS);
+    ScalaInstances.releaseScalaInstance(first);
+    ScalaInstance other = ScalaInstances.acquireScalaInstance("3.1.0", NO_JARS, NO_JARS);
+    ScalaInstances.releaseScalaInstance(other);
+    ScalaInstance second = ScalaInstances.acquireScalaInstance("3.0.0", NO_JARS, NO_JARS);
+    ScalaInstances.releaseScalaInstance(second);
+    assertNotSame(first, second);
+  }
+}
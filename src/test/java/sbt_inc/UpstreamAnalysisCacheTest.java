@@ -0,0 +1,77 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package sbt_inc;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import sbt.internal.inc.Analysis;
+import xsbti.compile.CompileAnalysis;
+
+public class UpstreamAnalysisCacheTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final AtomicInteger loads = new AtomicInteger();
+
+  private UpstreamAnalysisCache newCache(long maxBytes) {
+    return new UpstreamAnalysisCache(
+        maxBytes,
+        file -> {
+          loads.incrementAndGet();
+          return Optional.<CompileAnalysis>of(Analysis.empty());
+        });
+  }
+
+  private File write(String name, String content) throws Exception {
+    File file = tmp.newFile(name);
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  @Test
+  public void unchanged_file_should_be_loaded_once() throws Exception {
+    UpstreamAnalysisCache cache = newCache(1024);
+    File file = write("compile", "analysis");
+
+    assertTrue(cache.analysis(file).isPresent());
+    assertTrue(cache.analysis(file).isPresent());
+    assertEquals(1, loads.get());
+    assertEquals(1, cache.hits());
+
+    Files.write(file.toPath(), "new analysis".getBytes(StandardCharsets.UTF_8));
+    cache.analysis(file);
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void missing_file_should_not_be_loaded() {
+    UpstreamAnalysisCache cache = newCache(1024);
+    assertFalse(cache.analysis(new File(tmp.getRoot(), "missing")).isPresent());
+    assertEquals(0, loads.get());
+  }
+
+  @Test
+  public void least_recently_used_analysis_should_be_dropped_over_the_cap() throws Exception {
+    UpstreamAnalysisCache cache = newCache(10);
+    File first = write("first", "123456");
+    File second = write("second", "123456");
+
+    cache.analysis(first);
+    cache.analysis(second);
+    cache.analysis(second);
+    assertEquals(2, loads.get());
+
+    cache.analysis(first);
+    assertEquals(3, loads.get());
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package scala_maven;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.junit.Test;
+
+public class ArtifactResolutionCacheTest {
+
+  @Test
+  public void resolution_should_run_once_per_key() {
+    ArtifactResolutionCache cache = new ArtifactResolutionCache();
+    AtomicInteger resolutions = new AtomicInteger();
+
+    Set<Artifact> first =
+        cache.get("scala-compiler", () -> resolve(resolutions, "scala-compiler", "scala-library"));
+    Set<Artifact> second =
+        cache.get("scala-compiler", () -> resolve(resolutions, "scala-compiler", "scala-library"));
+    cache.get("scala-library", () -> resolve(resolutions, "scala-library"));
+
+    assertSame(first, second);
+    assertEquals(2, first.size());
+    assertEquals(2, resolutions.get());
+    assertEquals(1, cache.hits());
+    assertEquals(2, cache.misses());
+    try {
+      first.clear();
+      fail("the resolved artifacts are shared, they must not be modifiable");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void failure_should_not_be_cached() {
+    ArtifactResolutionCache cache = new ArtifactResolutionCache();
+    try {
+      cache.get(
+          "scala-compiler",
+          () -> {
+            throw new IllegalStateException("offline");
+          });
+      fail("the failure should be thrown");
+    } catch (IllegalStateException e) {
+      assertEquals("offline", e.getMessage());
+    }
+
+    AtomicInteger resolutions = new AtomicInteger();
+    assertEquals(
+        1, cache.get("scala-compiler", () -> resolve(resolutions, "scala-compiler")).size());
+    assertEquals(1, resolutions.get());
+  }
+
+  private static Set<Artifact> resolve(AtomicInteger resolutions, String... artifactIds) {
+    resolutions.incrementAndGet();
+    Set<Artifact> artifacts = new HashSet<>();
+    for (String artifactId : artifactIds) {
+      artifacts.add(
+          new DefaultArtifact(
+              "org.scala-lang",
+              artifactId,
+              "2.13.16",
+              Artifact.SCOPE_COMPILE,
+              "jar",
+              null,
+              new DefaultArtifactHandler("jar")));
+    }
+    return artifacts;
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package scala_maven;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.junit.Test;
+
+public class CompilerBridgesTest {
+
+  @Test
+  public void scala_setups_should_be_found_in_the_projects_using_the_plugin() {
+    MavenProject scala212 = project(true, "org.scala-lang", "scala-library", "2.12.20");
+    MavenProject scala213 = project(true, "org.scala-lang", "scala-library", "2.13.16");
+    MavenProject scala3 = project(true, "org.scala-lang", "scala3-library_3", "3.3.6");
+    MavenProject otherScala213 = project(true, "org.scala-lang", "scala-library", "2.13.16");
+    MavenProject java = project(false, "org.scala-lang", "scala-library", "2.11.12");
+    MavenProject typelevel =
+        project(true, "org.typelevel", "scala-library", "2.12.4-bin-typelevel");
+    configure(typelevel, "scalaOrganization", "org.typelevel");
+    MavenProject local = project(true, "org.scala-lang", "scala-library", "2.12.19");
+    configure(local, "scalaHome", "/opt/scala");
+
+    assertEquals(
+        asList(
+            "org.scala-lang:2.12.20",
+            "org.scala-lang:2.13.16",
+            "org.scala-lang:3.3.6",
+            "org.typelevel:2.12.4-bin-typelevel"),
+        names(
+            asList(scala212, scala213, scala3, otherScala213, java, typelevel, local),
+            new Properties()));
+  }
+
+  @Test
+  public void scala_version_parameter_should_win_over_the_dependencies() {
+    MavenProject configured = project(true, "org.scala-lang", "scala-library", "2.13.16");
+    configure(configured, "scalaVersion", "2.13.15");
+    MavenProject property = project(true, "org.scala-lang", "scala-library", "2.13.16");
+    property.getProperties().setProperty("scala.version", "2.13.14");
+    assertEquals(
+        asList("org.scala-lang:2.13.15", "org.scala-lang:2.13.14"),
+        names(asList(configured, property), new Properties()));
+
+    Properties userProperties = new Properties();
+    userProperties.setProperty("scala.version", "2.13.12");
+    assertEquals(
+        asList("org.scala-lang:2.13.15", "org.scala-lang:2.13.12"),
+        names(asList(configured, property), userProperties));
+  }
+
+  private static List<String> names(List<MavenProject> projects, Properties userProperties) {
+    List<String> names = new ArrayList<>();
+    for (CompilerBridges.ScalaSetup setup :
+        CompilerBridges.scalaSetupsOf(projects, userProperties)) {
+      names.add(setup.toString());
+    }
+    return names;
+  }
+
+  private static MavenProject project(
+      boolean usesPlugin, String groupId, String artifactId, String version) {
+    Model model = new Model();
+    Dependency library = new Dependency();
+    library.setGroupId(groupId);
+    library.setArtifactId(artifactId);
+    library.setVersion(version);
+    model.addDependency(library);
+    model.setBuild(new Build());
+    if (usesPlugin) {
+      Plugin plugin = new Plugin();
+      plugin.setGroupId("net.alchim31.maven");
+      plugin.setArtifactId("scala-maven-plugin");
+      plugin.setConfiguration(new Xpp3Dom("configuration"));
+      model.getBuild().addPlugin(plugin);
+    }
+    return new MavenProject(model);
+  }
+
+  private static void configure(MavenProject project, String name, String value) {
+    Xpp3Dom parameter = new Xpp3Dom(name);
+    parameter.setValue(value);
+    ((Xpp3Dom) project.getPlugin(CompilerBridges.PLUGIN_KEY).getConfiguration())
+        .addChild(parameter);
+  }
+}
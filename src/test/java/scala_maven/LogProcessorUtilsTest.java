@@ -5,7 +5,13 @@
 package scala_maven;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Test;
 import scala_maven_executions.LogProcessorUtils;
 import scala_maven_executions.LogProcessorUtils.Level;
@@ -87,6 +93,53 @@ public class LogProcessorUtilsTest {
             "^");
   }
 
+  /**
+   * The output of scalac 2.12, 2.13 and 3 (and edge cases) with the levels given by the former
+   * classifier, based on regular expressions on the lower-cased lines.
+   */
+  @Test
+  public void sameLevelsAsGoldenCorpus() throws Exception {
+    for (String corpus : new String[] {"scala-2.12", "scala-2.13", "scala-3", "edge-cases"}) {
+      List<String> lines = readLines("/scalac-logs/" + corpus + ".log");
+      List<String> expected = readLines("/scalac-logs/" + corpus + ".expected");
+      assertEquals(corpus, expected.size(), lines.size());
+      LevelState previous = new LevelState();
+      LevelState reused = new LevelState();
+      for (int i = 0; i < lines.size(); i++) {
+        String line = lines.get(i);
+        String[] levelAndUntil = expected.get(i).split("\t", 3);
+        String message = corpus + ":" + (i + 1) + ": " + line;
+        assertEquals(message, line, levelAndUntil[2]);
+        Level level = Level.valueOf(levelAndUntil[0]);
+        String untilContains = levelAndUntil[1].isEmpty() ? null : levelAndUntil[1];
+
+        previous = LogProcessorUtils.levelStateOf(line, previous);
+        assertEquals(message, level, previous.level);
+        assertEquals(message, untilContains, previous.untilContains);
+
+        LevelState before = reused;
+        LogProcessorUtils.updateLevelState(line, reused);
+        assertSame(before, reused);
+        assertEquals(message, level, reused.level);
+        assertEquals(message, untilContains, reused.untilContains);
+      }
+    }
+  }
+
+  private List<String> readLines(String resource) throws Exception {
+    List<String> lines = new ArrayList<>();
+    try (BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(
+                getClass().getResourceAsStream(resource), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    }
+    return lines;
+  }
+
   private LevelState assertLevelState(
       String input, LevelState previous, Level expectedLevel, String expectedUntilContains) {
     LevelState back = LogProcessorUtils.levelStateOf(input, previous);
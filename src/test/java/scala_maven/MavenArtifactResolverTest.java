@@ -0,0 +1,166 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package scala_maven;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.function.Function;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.resolver.ArtifactResolutionRequest;
+import org.apache.maven.artifact.resolver.ArtifactResolutionResult;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.repository.RepositorySystem;
+import org.junit.Test;
+
+public class MavenArtifactResolverTest {
+
+  /** The resolution requests received by the repository system, in order. */
+  private final List<ArtifactResolutionRequest> requests =
+      Collections.synchronizedList(new ArrayList<>());
+
+  /**
+   * Returns a resolver whose repository system answers the requests with {@code resolution}, the
+   * other methods of the repository system being unsupported.
+   */
+  private MavenArtifactResolver resolver(
+      Function<ArtifactResolutionRequest, Collection<Artifact>> resolution) {
+    RepositorySystem repositorySystem =
+        (RepositorySystem)
+            Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] {RepositorySystem.class},
+                (proxy, method, args) -> {
+                  if (!method.getName().equals("resolve")) {
+                    throw new UnsupportedOperationException(method.getName());
+                  }
+                  ArtifactResolutionRequest request = (ArtifactResolutionRequest) args[0];
+                  requests.add(request);
+                  ArtifactResolutionResult result = new ArtifactResolutionResult();
+                  result.setArtifacts(new LinkedHashSet<>(resolution.apply(request)));
+                  return result;
+                });
+    MavenProject project = new MavenProject();
+    project.setArtifact(jar("app", "app", "1.0"));
+    project.setRemoteArtifactRepositories(Collections.emptyList());
+    return new MavenArtifactResolver(
+        repositorySystem, new DefaultMavenExecutionRequest(), () -> project);
+  }
+
+  @Test
+  public void batch_should_resolve_each_jar_without_its_dependencies() {
+    MavenArtifactResolver resolver =
+        resolver(request -> Collections.singleton(resolved(request.getArtifact())));
+    List<Artifact> jars =
+        asList(
+            jar("org.scala-lang", "scala-compiler", "2.13.16"),
+            jar("org.scala-lang", "scala-library", "2.13.16"),
+            jar("org.scala-lang", "scala-reflect", "2.13.16"));
+
+    Set<Artifact> resolved = resolver.getJars(jars);
+
+    assertEquals(jars, new ArrayList<>(resolved));
+    assertTrue(resolved.stream().allMatch(Artifact::isResolved));
+    assertEquals(3, requests.size());
+    for (ArtifactResolutionRequest request : requests) {
+      assertTrue(request.isResolveRoot());
+      assertFalse(request.isResolveTransitively());
+    }
+
+    // the jars resolved are cached for the session
+    resolver.getJars(jars);
+    assertEquals(3, requests.size());
+  }
+
+  @Test
+  public void missing_jar_of_a_batch_should_fail_the_batch() {
+    MavenArtifactResolver resolver =
+        resolver(
+            request ->
+                request.getArtifact().getArtifactId().equals("missing")
+                    ? Collections.emptySet()
+                    : Collections.singleton(resolved(request.getArtifact())));
+    try {
+      resolver.getJars(
+          asList(
+              jar("org.scala-lang", "scala-library", "2.13.16"),
+              jar("com.lib", "missing", "1.0"),
+              jar("org.scala-lang", "scala-reflect", "2.13.16")));
+      fail("the missing jar should fail the batch");
+    } catch (NoSuchElementException e) {
+      assertEquals("Could not resolve artifact com.lib:missing:1.0:null", e.getMessage());
+    }
+  }
+
+  @Test
+  public void failure_of_the_repository_system_should_be_thrown_unwrapped() {
+    MavenArtifactResolver resolver =
+        resolver(
+            request -> {
+              throw new IllegalStateException("offline");
+            });
+    try {
+      resolver.getJars(
+          asList(
+              jar("org.scala-lang", "scala-library", "2.13.16"),
+              jar("org.scala-lang", "scala-reflect", "2.13.16")));
+      fail("the failure should be thrown");
+    } catch (IllegalStateException e) {
+      assertEquals("offline", e.getMessage());
+    }
+  }
+
+  @Test
+  public void jars_and_dependencies_should_be_mediated_in_a_single_collection() {
+    MavenArtifactResolver resolver =
+        resolver(
+            request ->
+                asList(
+                    resolved(jar("org.scala-lang", "scala-compiler", "2.13.16")),
+                    resolved(jar("org.scala-lang", "scala-library", "2.13.16")),
+                    resolved(jar("org.scala-lang", "scala-reflect", "2.13.16"))));
+    List<Artifact> jars =
+        asList(
+            jar("org.scala-lang", "scala-compiler", "2.13.16"),
+            jar("org.scala-lang", "scala-library", "2.13.16"));
+
+    Set<Artifact> resolved = resolver.getJarsAndDependencies(jars);
+
+    // a single collection of all the roots, where Maven mediates their conflicting dependencies,
+    // the roots being the dependencies of the project, which is not resolved
+    assertEquals(1, requests.size());
+    ArtifactResolutionRequest request = requests.get(0);
+    assertEquals("app:app:jar:1.0", request.getArtifact().getId());
+    assertFalse(request.isResolveRoot());
+    assertEquals(new LinkedHashSet<>(jars), request.getArtifactDependencies());
+    assertEquals(3, resolved.size());
+
+    // the same roots, in another order, are not resolved again
+    resolver.getJarsAndDependencies(asList(jars.get(1), jars.get(0)));
+    assertEquals(1, requests.size());
+  }
+
+  private static Artifact jar(String groupId, String artifactId, String version) {
+    return new DefaultArtifact(
+        groupId,
+        artifactId,
+        version,
+        Artifact.SCOPE_COMPILE,
+        "jar",
+        null,
+        new DefaultArtifactHandler("jar"));
+  }
+
+  private static Artifact resolved(Artifact artifact) {
+    Artifact resolved = jar(artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion());
+    resolved.setResolved(true);
+    return resolved;
+  }
+}
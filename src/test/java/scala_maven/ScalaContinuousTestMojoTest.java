@@ -0,0 +1,102 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package scala_maven;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ScalaContinuousTestMojoTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void test_classes_should_match_the_default_includes_of_surefire() throws Exception {
+    File classes = classes();
+    assertEquals(
+        asList("a.FooTest", "a.TestBar", "a.b.BazTests", "a.b.QuxTestCase"),
+        ScalaContinuousTestMojo.findTestClasses(classes, null));
+  }
+
+  @Test
+  public void test_classes_should_match_the_test_parameter() throws Exception {
+    File classes = classes();
+    assertEquals(
+        asList("a.FooTest", "a.b.BazTests"),
+        ScalaContinuousTestMojo.findTestClasses(classes, "FooTest, Baz*#someMethod"));
+    assertEquals(
+        asList("a.b.BazTests", "a.b.QuxTestCase"),
+        ScalaContinuousTestMojo.findTestClasses(classes, "a/b/*"));
+    assertEquals(
+        asList("a.Helper"), ScalaContinuousTestMojo.findTestClasses(classes, "a.Helper.java"));
+  }
+
+  @Test
+  public void warm_runner_should_run_only_junit4_tests_with_the_default_surefire() {
+    Artifact junit = artifact("junit", "junit");
+    assertNull(ScalaContinuousTestMojo.warmRunnerUnsupported(asList(junit), null));
+    assertNull(ScalaContinuousTestMojo.warmRunnerUnsupported(asList(junit), new Plugin()));
+
+    assertNotNull(ScalaContinuousTestMojo.warmRunnerUnsupported(Collections.emptyList(), null));
+    assertNotNull(
+        ScalaContinuousTestMojo.warmRunnerUnsupported(
+            asList(junit, artifact("org.junit.vintage", "junit-vintage-engine")), null));
+    assertNotNull(
+        ScalaContinuousTestMojo.warmRunnerUnsupported(
+            asList(junit, artifact("org.junit.platform", "junit-platform-launcher")), null));
+
+    Plugin configured = new Plugin();
+    configured.setConfiguration(new Xpp3Dom("configuration"));
+    assertNotNull(ScalaContinuousTestMojo.warmRunnerUnsupported(asList(junit), configured));
+
+    PluginExecution execution = new PluginExecution();
+    execution.setConfiguration(new Xpp3Dom("configuration"));
+    Plugin configuredExecution = new Plugin();
+    configuredExecution.addExecution(execution);
+    assertNotNull(
+        ScalaContinuousTestMojo.warmRunnerUnsupported(asList(junit), configuredExecution));
+  }
+
+  private static Artifact artifact(String groupId, String artifactId) {
+    return new DefaultArtifact(
+        groupId,
+        artifactId,
+        "1.0",
+        Artifact.SCOPE_TEST,
+        "jar",
+        null,
+        new DefaultArtifactHandler("jar"));
+  }
+
+  private File classes() throws IOException {
+    File root = tmp.newFolder("test-classes");
+    for (String name :
+        asList(
+            "a/FooTest.class",
+            "a/FooTest$Nested.class",
+            "a/TestBar.class",
+            "a/Helper.class",
+            "a/b/BazTests.class",
+            "a/b/QuxTestCase.class",
+            "a/b/resource.txt")) {
+      File file = new File(root, name);
+      file.getParentFile().mkdirs();
+      file.createNewFile();
+    }
+    return root;
+  }
+}
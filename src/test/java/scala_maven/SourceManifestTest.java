@@ -0,0 +1,95 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package scala_maven;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SourceManifestTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private static final long OLD = 10_000_000L;
+
+  private File write(String name, String content, long lastModified) throws Exception {
+    File file = new File(tmp.getRoot(), name);
+    Files.write(file.toPath(), content.getBytes("UTF-8"));
+    assertTrue(file.setLastModified(lastModified));
+    return file;
+  }
+
+  private SourceManifest roundTrip(SourceManifest manifest) throws Exception {
+    File file = new File(tmp.getRoot(), "classes.manifest");
+    manifest.write(file);
+    return SourceManifest.read(file);
+  }
+
+  @Test
+  public void unchanged_sources_should_have_the_same_inputs() throws Exception {
+    List<File> sources = Arrays.asList(write("A.scala", "class A", OLD), write("B.scala", "", OLD));
+    SourceManifest previous =
+        roundTrip(
+            SourceManifest.of("setup", sources, null)
+                .withProducts(new HashSet<>(Arrays.asList("A.class", "p/B.class"))));
+
+    assertTrue(SourceManifest.of("setup", sources, previous).hasSameInputs(previous));
+    assertEquals(new TreeSet<>(Arrays.asList("A.class", "p/B.class")), previous.products());
+    assertFalse(SourceManifest.of("other", sources, previous).hasSameInputs(previous));
+  }
+
+  @Test
+  public void changes_should_be_detected_by_content() throws Exception {
+    File a = write("A.scala", "class A", OLD);
+    File b = write("B.scala", "class B", OLD);
+    SourceManifest previous = roundTrip(SourceManifest.of("setup", Arrays.asList(a, b), null));
+
+    // same size, older modification time, eg restored by a checkout
+    write("A.scala", "class Z", OLD - 60_000);
+    assertFalse(SourceManifest.of("setup", Arrays.asList(a, b), previous).hasSameInputs(previous));
+    // touched only
+    write("A.scala", "class A", OLD + 5000);
+    assertTrue(SourceManifest.of("setup", Arrays.asList(a, b), previous).hasSameInputs(previous));
+    // deleted
+    assertFalse(
+        SourceManifest.of("setup", Collections.singletonList(b), previous).hasSameInputs(previous));
+  }
+
+  @Test
+  public void missing_or_corrupted_manifest_should_be_ignored() throws Exception {
+    File file = new File(tmp.getRoot(), "classes.manifest");
+    assertNull(SourceManifest.read(file));
+    Files.write(file.toPath(), "scala-maven-plugin source manifest v1\nnot a number\n".getBytes());
+    assertNull(SourceManifest.read(file));
+  }
+
+  @Test
+  public void products_should_be_the_class_files_written_by_the_compilation() throws Exception {
+    File classes = tmp.newFolder("classes");
+    File stale = new File(classes, "Old.class");
+    Files.write(stale.toPath(), new byte[0]);
+    assertTrue(stale.setLastModified(OLD));
+    File rewritten = new File(classes, "Rewritten.class");
+    Files.write(rewritten.toPath(), new byte[0]);
+    assertTrue(rewritten.setLastModified(OLD));
+    Map<String, Long> before = SourceManifest.classFilesOf(classes);
+    long start = System.currentTimeMillis();
+
+    new File(classes, "p").mkdir();
+    Files.write(new File(classes, "p/New.class").toPath(), new byte[0]);
+    assertTrue(rewritten.setLastModified(OLD + 1000));
+    // a resource copied during the compilation, eg by another goal of a parallel build
+    Files.write(new File(classes, "p/application.conf").toPath(), new byte[0]);
+
+    assertEquals(
+        new TreeSet<>(Arrays.asList("Rewritten.class", "p" + File.separator + "New.class")),
+        SourceManifest.productsOf(classes, before, start));
+  }
+}
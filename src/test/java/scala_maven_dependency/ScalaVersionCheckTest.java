@@ -0,0 +1,113 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package scala_maven_dependency;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+import scala_maven.VersionNumber;
+
+public class ScalaVersionCheckTest {
+
+  private static final String PROJECT = "app:app:jar:1.0";
+
+  private final Context scala213 =
+      new Context4ScalaRemote(
+          new VersionNumber("2.13.16"),
+          new VersionNumber("2.13.16"),
+          new ArtifactIds4Scala2(),
+          "org.scala-lang",
+          null);
+
+  @Test
+  public void same_scala_versions_should_pass() throws Exception {
+    ScalaVersionCheck check =
+        ScalaVersionCheck.of(
+            scala213,
+            asList(
+                artifact("org.scala-lang", "scala-library", "2.13.16", PROJECT),
+                artifact("org.scala-lang", "scala-compiler", "2.13.16", PROJECT),
+                artifact("com.lib", "lib_2.13", "1.0", PROJECT)));
+    assertFalse(check.isFailed());
+  }
+
+  @Test
+  public void other_scala_versions_should_fail_and_tell_who_requires_them() throws Exception {
+    ScalaVersionCheck check =
+        ScalaVersionCheck.of(
+            scala213,
+            asList(
+                artifact("org.scala-lang", "scala-library", "2.13.16", PROJECT),
+                artifact(
+                    "org.scala-lang",
+                    "scala-compiler",
+                    "2.13.10",
+                    PROJECT,
+                    "com.lib:lib_2.13:jar:1.0")));
+    assertTrue(check.isFailed());
+
+    List<String> warnings = new ArrayList<>();
+    SystemStreamLog log =
+        new SystemStreamLog() {
+          @Override
+          public void warn(CharSequence content) {
+            warnings.add(content.toString());
+          }
+        };
+    check.logScalaDependents(log);
+    check.logScalaDependents(log);
+    assertEquals(
+        asList(
+            " Expected all dependencies to require Scala version: 2.13.16",
+            " app:app:1.0 requires scala version: 2.13.16",
+            " com.lib:lib_2.13:1.0 requires scala version: 2.13.10"),
+        warnings);
+  }
+
+  @Test
+  public void checks_of_a_session_should_only_be_shared_by_the_same_artifacts() throws Exception {
+    MavenExecutionRequest request = new DefaultMavenExecutionRequest();
+    List<Artifact> artifacts =
+        asList(
+            artifact("org.scala-lang", "scala-library", "2.13.16", PROJECT),
+            artifact("org.typelevel", "cats-core_2.13", "2.10", PROJECT));
+    // other artifacts whose list of ids has the same hash code as the one above
+    List<Artifact> others =
+        asList(
+            artifact("org.scala-lang", "scala-library", "2.13.15", PROJECT),
+            artifact("org.typelevel", "cats-core_2.13", "2.20", PROJECT));
+
+    ScalaVersionCheck check = ScalaVersionCheck.of(request, PROJECT, scala213, artifacts);
+    assertFalse(check.isFailed());
+    assertSame(check, ScalaVersionCheck.of(request, PROJECT, scala213, artifacts));
+    assertTrue(ScalaVersionCheck.of(request, PROJECT, scala213, others).isFailed());
+  }
+
+  private static Artifact artifact(
+      String groupId, String artifactId, String version, String... parents) {
+    Artifact artifact =
+        new DefaultArtifact(
+            groupId,
+            artifactId,
+            version,
+            Artifact.SCOPE_COMPILE,
+            "jar",
+            null,
+            new DefaultArtifactHandler("jar"));
+    List<String> trail = new ArrayList<>(asList(parents));
+    trail.add(artifact.getId());
+    artifact.setDependencyTrail(trail);
+    return artifact;
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package scala_maven_executions;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class TestServerTest {
+
+  public static class Passing {
+    @Test
+    public void passes() {}
+
+    @Ignore
+    @Test
+    public void ignored() {}
+  }
+
+  public static class Failing {
+    @Test
+    public void fails() {
+      fail("expected failure");
+    }
+  }
+
+  public static class NotATest {
+    public void helper() {}
+  }
+
+  @Test
+  public void only_the_test_classes_should_be_run() throws Exception {
+    TestServer.Result result =
+        TestServer.runTests(
+            getClass().getClassLoader(),
+            asList(Passing.class.getName(), Failing.class.getName(), NotATest.class.getName()));
+    assertEquals(2, result.run);
+    assertEquals(1, result.failures);
+    assertEquals(1, result.ignored);
+    assertTrue(result.report, result.report.contains("expected failure"));
+    assertTrue(result.report, result.report.contains("Tests run: 2,  Failures: 1"));
+  }
+}
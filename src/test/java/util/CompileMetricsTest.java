@@ -0,0 +1,57 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CompileMetricsTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void timings_of_the_same_name_should_add_up() {
+    CompileMetrics metrics = new CompileMetrics();
+    metrics.addTime("javac", 1_000_000);
+    metrics.addTime("javac", 2_500_000);
+    metrics.addPhaseTime("typer", 7);
+    assertEquals(Long.valueOf(3_500_000), metrics.time("javac"));
+    assertEquals(Long.valueOf(7), metrics.phaseTime("typer"));
+    assertNull(metrics.time("bridgeLookup"));
+  }
+
+  @Test
+  public void metrics_should_be_written_as_json() throws Exception {
+    CompileMetrics metrics = CompileMetrics.start();
+    metrics.put("module", "g:a \"quoted\"");
+    metrics.addTime("sourceScan", 1_250_000);
+    metrics.addPhaseTime("typer", 10_000_000);
+    metrics.count("sources", 3);
+    File file = new File(tmp.getRoot(), "scala-maven-plugin/compile-metrics.json");
+    metrics.write(file);
+
+    String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    assertTrue(json, json.startsWith("{\n  \"module\": \"g:a \\\"quoted\\\"\",\n"));
+    assertTrue(json, json.contains("\"timings\": {\n    \"sourceScan\": 1.3\n  },"));
+    assertTrue(json, json.contains("\"phases\": {\n    \"typer\": 10.0\n  },"));
+    assertTrue(json, json.contains("\"sources\": {\n    \"sources\": 3\n  },"));
+    assertTrue(json, json.matches("(?s).*\"peakHeapBytes\": [1-9][0-9]*\n}\n"));
+  }
+
+  @Test
+  public void empty_metrics_should_be_valid_json() throws Exception {
+    File file = new File(tmp.getRoot(), "metrics.json");
+    new CompileMetrics().write(file);
+    String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    assertTrue(
+        json, json.startsWith("{\n  \"timings\": {},\n  \"phases\": {},\n  \"sources\": {},"));
+  }
+}
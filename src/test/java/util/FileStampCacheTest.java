@@ -0,0 +1,96 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileStampCacheTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final AtomicInteger computations = new AtomicInteger();
+
+  private final Function<Path, String> content =
+      path -> {
+        computations.incrementAndGet();
+        try {
+          return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      };
+
+  private Path oldFile(String name, String text, long lastModified) throws Exception {
+    Path path = tmp.getRoot().toPath().resolve(name);
+    Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+    path.toFile().setLastModified(lastModified);
+    return path;
+  }
+
+  @Test
+  public void values_should_be_recomputed_only_when_the_file_changed() throws Exception {
+    FileStampCache cache = FileStampCache.load(new File(tmp.getRoot(), "stamps"));
+    Path path = oldFile("a.scala", "v1", 10_000_000L);
+
+    assertEquals("v1", cache.get(path, content));
+    assertEquals("v1", cache.get(path, content));
+    assertEquals(1, computations.get());
+
+    oldFile("a.scala", "v22", 20_000_000L);
+    assertEquals("v22", cache.get(path, content));
+    assertEquals(2, computations.get());
+  }
+
+  @Test
+  public void recently_modified_files_should_not_be_cached() throws Exception {
+    FileStampCache cache = FileStampCache.load(new File(tmp.getRoot(), "stamps"));
+    Path path = oldFile("a.scala", "v1", System.currentTimeMillis());
+
+    cache.get(path, content);
+    cache.get(path, content);
+    assertEquals(2, computations.get());
+  }
+
+  @Test
+  public void used_entries_should_be_persisted() throws Exception {
+    File file = new File(tmp.getRoot(), "stamps");
+    Path a = oldFile("a.scala", "a", 10_000_000L);
+    Path b = oldFile("b.scala", "b", 10_000_000L);
+    FileStampCache cache = FileStampCache.load(file);
+    cache.get(a, content);
+    cache.get(b, content);
+    cache.save();
+
+    // b is not used anymore, so it's dropped on save
+    cache = FileStampCache.load(file);
+    assertEquals("a", cache.get(a, content));
+    assertEquals(2, computations.get());
+    cache.save();
+
+    cache = FileStampCache.load(file);
+    assertEquals("b", cache.get(b, content));
+    assertEquals(3, computations.get());
+  }
+
+  @Test
+  public void corrupted_file_should_be_ignored() throws Exception {
+    File file = new File(tmp.getRoot(), "stamps");
+    Files.write(file.toPath(), new byte[] {0, 0, 0, 1, 0, 0, 0, 5, 1});
+    Path path = oldFile("a.scala", "v1", 10_000_000L);
+
+    assertEquals("v1", FileStampCache.load(file).get(path, content));
+    assertEquals(1, computations.get());
+  }
+}
@@ -11,11 +11,15 @@ import org.apache.maven.toolchain.Toolchain;
 import org.junit.Rule;
 import org.junit.Test;
 import uk.org.webcompere.systemstubs.rules.EnvironmentVariablesRule;
+import uk.org.webcompere.systemstubs.rules.SystemPropertiesRule;
 
 public class JavaLocatorTest {
 
   @Rule public final EnvironmentVariablesRule environmentVariables = new EnvironmentVariablesRule();
 
+  // restores java.home, cleared by some tests
+  @Rule public final SystemPropertiesRule systemProperties = new SystemPropertiesRule();
+
   @Test
   public void shouldReturnNotNullWhenJavaIsNotAvailableOnCommandLineAndJavaHomeIsPresent() {
     Toolchain toolchain = new ReturningToolChain(null);
@@ -0,0 +1,147 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SourceIndexTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private static final List<String> INCLUDES = Arrays.asList("**/*.scala", "**/*.java");
+  private static final List<String> EXCLUDES = Collections.singletonList("**/excluded/**");
+
+  private File touch(File root, String path) throws Exception {
+    File file = new File(root, path);
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), new byte[0]);
+    return file;
+  }
+
+  private static List<File> scan(File root) {
+    DirectoryScanner scanner = new DirectoryScanner();
+    scanner.setBasedir(root);
+    scanner.setIncludes(INCLUDES.toArray(new String[] {}));
+    scanner.setExcludes(EXCLUDES.toArray(new String[] {}));
+    scanner.addDefaultExcludes();
+    scanner.scan();
+    List<File> files = new ArrayList<>();
+    for (String path : scanner.getIncludedFiles()) {
+      files.add(new File(root, path).getAbsoluteFile());
+    }
+    Collections.sort(files);
+    return files;
+  }
+
+  private static List<File> find(File root) throws Exception {
+    List<File> files = new ArrayList<>(SourceIndex.find(root, INCLUDES, EXCLUDES, false));
+    Collections.sort(files);
+    return files;
+  }
+
+  @Test
+  public void should_find_the_same_files_as_a_directory_scanner() throws Exception {
+    File root = tmp.newFolder("src");
+    touch(root, "A.scala");
+    touch(root, "a/b/B.java");
+    touch(root, "a/b/notes.txt");
+    touch(root, "a/excluded/C.scala");
+    touch(root, "a/.git/D.scala");
+    touch(root, "a/.svn/E.scala");
+    new File(root, "empty").mkdir();
+
+    assertEquals(2, scan(root).size());
+    assertEquals(scan(root), find(root));
+  }
+
+  @Test
+  public void should_see_added_and_removed_files() throws Exception {
+    File root = tmp.newFolder("src");
+    touch(root, "A.scala");
+    File b = touch(root, "a/b/B.scala");
+    assertEquals(scan(root), find(root));
+
+    touch(root, "a/b/c/C.scala");
+    assertTrue(b.delete());
+    assertEquals(scan(root), find(root));
+    assertEquals(Arrays.asList("A.scala", "C.scala"), names(find(root)));
+  }
+
+  @Test
+  public void unchanged_directories_should_not_be_listed_again() throws Exception {
+    File root = tmp.newFolder("src");
+    File a = touch(root, "a/A.scala");
+    // directories modified long ago are trusted
+    a.getParentFile().setLastModified(10_000_000L);
+    root.setLastModified(10_000_000L);
+
+    List<File> first = SourceIndex.find(root, INCLUDES, EXCLUDES, false);
+    assertSame(first, SourceIndex.find(root, INCLUDES, EXCLUDES, false));
+    assertNotSame(first, SourceIndex.find(root, INCLUDES, Collections.emptyList(), false));
+  }
+
+  @Test
+  public void roots_should_be_merged_in_sorted_order() throws Exception {
+    File generated = tmp.newFolder("generated");
+    File src = tmp.newFolder("src");
+    touch(src, "b/B.scala");
+    touch(generated, "Z.scala");
+    touch(src, "A.scala");
+
+    List<File> expected = new ArrayList<>(scan(src));
+    expected.addAll(scan(generated));
+    Collections.sort(expected);
+    assertEquals(
+        expected, SourceIndex.find(Arrays.asList(src, generated), INCLUDES, EXCLUDES, false));
+  }
+
+  @Test
+  public void canonical_paths_should_resolve_symbolic_links() throws Exception {
+    File real = tmp.newFolder("real");
+    File a = touch(real, "A.scala");
+    File src = tmp.newFolder("src");
+    touch(src, "B.scala");
+    try {
+      Files.createSymbolicLink(new File(src, "linked").toPath(), real.toPath());
+      Files.createSymbolicLink(new File(src, "C.scala").toPath(), a.toPath());
+    } catch (UnsupportedOperationException | IOException e) {
+      Assume.assumeNoException(e);
+    }
+
+    // linked/A.scala and C.scala are both a link to real/A.scala
+    List<File> expected =
+        new ArrayList<>(
+            Arrays.asList(
+                a.getCanonicalFile(),
+                a.getCanonicalFile(),
+                new File(src, "B.scala").getCanonicalFile()));
+    Collections.sort(expected);
+    assertEquals(
+        expected, SourceIndex.find(Collections.singletonList(src), INCLUDES, EXCLUDES, true));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void missing_root_should_fail() throws Exception {
+    SourceIndex.find(new File(tmp.getRoot(), "missing"), INCLUDES, EXCLUDES, false);
+  }
+
+  private static List<String> names(List<File> files) {
+    List<String> names = new ArrayList<>();
+    for (File file : files) {
+      names.add(file.getName());
+    }
+    return names;
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * See UNLICENSE.
+ */
+package util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SourceWatcherTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private Map<String, List<File>> roots() throws Exception {
+    Map<String, List<File>> roots = new LinkedHashMap<>();
+    roots.put("main", Collections.singletonList(tmp.newFolder("main")));
+    roots.put("test", Arrays.asList(tmp.newFolder("test"), new File(tmp.getRoot(), "missing")));
+    return roots;
+  }
+
+  private void changesShouldBeReportedByScope(boolean polling) throws Exception {
+    Map<String, List<File>> roots = roots();
+    File pkg = new File(roots.get("test").get(0), "pkg");
+    try (SourceWatcher<String> watcher = new SourceWatcher<>(roots, 100, 50, polling)) {
+      assertTrue(pkg.mkdir());
+      Files.write(new File(pkg, "A.scala").toPath(), "class A".getBytes());
+      assertEquals(Collections.singleton("test"), watcher.awaitChanges());
+
+      // files of the created directories are watched too
+      Files.write(new File(pkg, "B.scala").toPath(), "class B".getBytes());
+      Files.write(new File(roots.get("main").get(0), "C.scala").toPath(), "class C".getBytes());
+      assertEquals(new HashSet<>(Arrays.asList("main", "test")), watcher.awaitChanges());
+    }
+  }
+
+  @Test(timeout = 20_000)
+  public void changes_should_be_reported_by_scope() throws Exception {
+    changesShouldBeReportedByScope(false);
+  }
+
+  @Test(timeout = 20_000)
+  public void changes_should_be_reported_by_scope_when_polling() throws Exception {
+    changesShouldBeReportedByScope(true);
+  }
+}